@@ -0,0 +1,135 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.mathd.Vec3d;
+import com.simsilica.sim.GameSystem;
+import com.simsilica.sim.GameSystemManager;
+import com.waffleware.example.entity.data.MassProperties;
+import com.waffleware.example.entity.data.Position;
+import com.waffleware.example.entity.data.SphereShape;
+import com.waffleware.example.logic.Body;
+import com.waffleware.example.logic.SimplePhysics;
+import com.waffleware.example.logic.utils.ObjectTypes;
+
+import java.util.Random;
+
+/**
+ *  A headless SimplePhysics setup with a configurable number of
+ *  ship-like bodies drifting around in random directions, for benchmarks 
+ *  that need a realistic simulation to run against.
+ *
+ *  @author    Paul Speed
+ */
+public class BenchmarkWorld {
+
+    private final EntityData ed = new DefaultEntityData();
+    private final GameSystemManager systems = new GameSystemManager();
+    private final SimplePhysics physics = new SimplePhysics();
+    private EntityId[] ids;
+ 
+    public BenchmarkWorld() {
+        systems.register(EntityData.class, ed);
+        systems.register(SimplePhysics.class, physics);
+    }
+ 
+    public EntityData getEntityData() {
+        return ed;
+    }
+    
+    public GameSystemManager getSystems() {
+        return systems;
+    }
+    
+    public SimplePhysics getPhysics() {
+        return physics;
+    }
+ 
+    /**
+     *  Adds another system that should run with the physics.  Must be
+     *  called before start().
+     */   
+    public <T extends GameSystem> T addSystem( T system ) {
+        return systems.addSystem(system);
+    }
+ 
+    /**
+     *  Creates the bodies spread through a cube 'extent' on a side, starts
+     *  the systems, and gives every body a random velocity.
+     */   
+    public void start( int bodyCount, double extent, long seed ) {
+        Random rand = new Random(seed);
+        ids = new EntityId[bodyCount];
+        for( int i = 0; i < bodyCount; i++ ) {
+            EntityId id = ed.createEntity();
+            ed.setComponents(id, ObjectTypes.shipType(ed),
+                             new MassProperties(1/50.0), 
+                             new SphereShape(3, new Vec3d()),
+                             new Position(coord(rand, extent), coord(rand, extent), coord(rand, extent)));
+            ids[i] = id;
+        }
+        systems.initialize();
+        systems.start();
+        
+        // Let physics pick up the entities
+        systems.update();
+        for( EntityId id : ids ) {
+            Body body = physics.getBody(id);
+            body.setVelocity(rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5, rand.nextDouble() * 10 - 5);
+        }
+    }
+ 
+    private static double coord( Random rand, double extent ) {
+        return (rand.nextDouble() - 0.5) * extent;
+    }
+ 
+    /**
+     *  Runs one game system update.
+     */   
+    public void update() {
+        systems.update();
+    }
+    
+    public void stop() {
+        systems.stop();
+        systems.terminate();
+        ed.close();
+    }
+}
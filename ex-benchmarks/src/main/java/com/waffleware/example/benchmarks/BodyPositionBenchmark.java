@@ -0,0 +1,127 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+import com.simsilica.mathd.trans.PositionTransition;
+import com.waffleware.example.entity.data.BodyPosition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Times recording and looking up frames in a BodyPosition history
+ *  the way BodyPositionPublisher and the client side do every frame, 
+ *  through both the TransitionBuffer and the primitive frame ring.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyPositionBenchmark {
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    
+    @Param({"12"})
+    public int history;
+ 
+    private BodyPosition position;
+    private Vector3f pos = new Vector3f();
+    private Quaternion rot = new Quaternion();
+    private Quatd quat = new Quatd();
+    private Vec3d resultPos = new Vec3d();
+    private Quatd resultRot = new Quatd();
+    private long time;
+    private long lookup;
+ 
+    @Setup
+    public void setup() {
+        position = new BodyPosition(history);
+        for( int i = 0; i < history; i++ ) {
+            nextFrame();
+            position.addFrame(time, time * 1e-9, 0, 0, quat, true);
+        }
+    }
+ 
+    private void nextFrame() {
+        time += FRAME_NANOS;
+        pos.set(time * 1e-9f, 0, 0);
+        position.addFrame(time, pos, rot, true);
+    }
+ 
+    @Benchmark
+    public BodyPosition addFrame() {
+        nextFrame();
+        return position;
+    }
+ 
+    @Benchmark
+    public BodyPosition addFramePrimitive() {
+        time += FRAME_NANOS;
+        position.addFrame(time, time * 1e-9, 0, 0, quat, true);
+        return position;
+    }
+ 
+    @Benchmark
+    public Vec3d getFramePrimitive() {
+        long t = nextLookup();
+        position.getFrames().getFrame(t, resultPos, resultRot);
+        return resultPos;
+    }
+ 
+    private long nextLookup() {
+        // Walk around inside the buffered history like a client 
+        // interpolating
+        lookup += FRAME_NANOS / 3;
+        if( lookup > time || lookup < time - (history - 1) * FRAME_NANOS ) {
+            lookup = time - (history - 1) * FRAME_NANOS;
+        }
+        return lookup;
+    }
+ 
+    @Benchmark
+    public PositionTransition getFrame() {
+        return position.getFrame(nextLookup());
+    }
+}
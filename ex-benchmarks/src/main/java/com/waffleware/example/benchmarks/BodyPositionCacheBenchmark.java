@@ -0,0 +1,107 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.simsilica.es.EntityId;
+import com.simsilica.mathd.trans.PositionTransition;
+import com.simsilica.mathd.trans.TransitionBuffer;
+import com.waffleware.example.entity.data.caches.BodyPositionCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Times BodyPositionCache.getBuffer() lookups from several threads at
+ *  once, like the networking and render threads initializing BodyPosition 
+ *  components on the client.  The buffers are held onto by the benchmark
+ *  so that lookups are hits rather than re-creations.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyPositionCacheBenchmark {
+
+    @Param({"1024"})
+    public int entities;
+ 
+    private EntityId[] ids;
+    private TransitionBuffer[] held;
+ 
+    @Setup
+    public void setup() {
+        ids = new EntityId[entities];
+        held = new TransitionBuffer[entities];
+        for( int i = 0; i < entities; i++ ) {
+            ids[i] = new EntityId(i);
+            held[i] = BodyPositionCache.getBuffer(ids[i], 12);
+        }
+    }
+ 
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+ 
+    @Benchmark
+    @Threads(1)
+    public TransitionBuffer<PositionTransition> getBuffer1( Cursor cursor ) {
+        return lookup(cursor);
+    }
+ 
+    @Benchmark
+    @Threads(4)
+    public TransitionBuffer<PositionTransition> getBuffer4( Cursor cursor ) {
+        return lookup(cursor);
+    }
+ 
+    @Benchmark
+    @Threads(8)
+    public TransitionBuffer<PositionTransition> getBuffer8( Cursor cursor ) {
+        return lookup(cursor);
+    }
+ 
+    private TransitionBuffer<PositionTransition> lookup( Cursor cursor ) {
+        int i = cursor.next;
+        cursor.next = (i + 1) % entities;
+        return BodyPositionCache.getBuffer(ids[i], 12);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.waffleware.example.logic.gravity.GravityField;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Compares the Barnes-Hut octree walk in GravityField against summing
+ *  every well directly for a fixed set of bodies as the number of wells
+ *  grows.  Each invocation computes the acceleration for every body once,
+ *  like a single physics step.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GravityBenchmark {
+
+    @Param({"64", "512", "4096"})
+    public int wells;
+    
+    @Param({"1000"})
+    public int bodies;
+ 
+    private GravityField field;   
+    private double[] pos;
+    private double[] acc;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(42);
+        
+        // Spread the wells and bodies through a cube sized like the
+        // default environment
+        double extent = 1024;
+        field = new GravityField();
+        for( int i = 0; i < wells; i++ ) {
+            field.addWell(coord(rand, extent), coord(rand, extent), coord(rand, extent), 
+                          5 + rand.nextDouble() * 10);
+        }
+        field.build();
+ 
+        pos = new double[bodies * 3];
+        acc = new double[bodies * 3];       
+        for( int i = 0; i < pos.length; i++ ) {
+            pos[i] = coord(rand, extent);
+        }
+    }
+ 
+    private static double coord( Random rand, double extent ) {
+        return (rand.nextDouble() - 0.5) * extent;
+    }
+ 
+    @Benchmark
+    public double[] barnesHut() {
+        for( int i = 0; i < pos.length; i += 3 ) {
+            field.accumulate(pos[i], pos[i + 1], pos[i + 2], acc, i);
+        }
+        return acc;
+    }
+ 
+    @Benchmark
+    public double[] naive() {
+        for( int i = 0; i < pos.length; i += 3 ) {
+            field.accumulateNaive(pos[i], pos[i + 1], pos[i + 2], acc, i);
+        }
+        return acc;
+    }
+ 
+    @Benchmark
+    public GravityField build() {
+        field.build();
+        return field;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.simsilica.sim.SimTime;
+import com.waffleware.example.logic.Body;
+import com.waffleware.example.logic.PhysicsListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Times a full SimplePhysics update, entity processing, drivers, 
+ *  integration, change collection, and listener dispatch, as the body
+ *  count grows.  A changed-only listener is registered like the server's
+ *  network systems so that change collection is included.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int bodies;
+ 
+    private BenchmarkWorld world;
+    private CountingListener listener = new CountingListener();
+ 
+    @Setup
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.getPhysics().addPhysicsListener(listener, true);
+        world.start(bodies, 1024, 42);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        world.stop();
+    }
+ 
+    @Benchmark
+    public int update() {
+        world.update();
+        return listener.count;
+    }
+ 
+    private static class CountingListener implements PhysicsListener {
+        int count;
+        
+        @Override
+        public void beginFrame( SimTime time ) {
+        }
+        
+        @Override
+        public void addBody( Body body ) {
+        }
+        
+        @Override
+        public void updateBody( Body body ) {
+            count++;
+        }
+        
+        @Override
+        public void updateBodies( Body[] bodies, int count ) {
+            this.count += count;
+        }
+        
+        @Override
+        public void removeBody( Body body ) {
+        }
+        
+        @Override
+        public void endFrame( SimTime time ) {
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.jme3.math.Quaternion;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import com.simsilica.es.Name;
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+import com.waffleware.example.common.remote.serializers.NameSerializer;
+import com.waffleware.example.common.remote.serializers.ObjectTypeSerializer;
+import com.waffleware.example.common.remote.serializers.PositionSerializer;
+import com.waffleware.example.common.remote.serializers.QuaternionSerializer;
+import com.waffleware.example.common.remote.serializers.SphereShapeSerializer;
+import com.waffleware.example.entity.data.ObjectType;
+import com.waffleware.example.entity.data.Position;
+import com.waffleware.example.entity.data.SphereShape;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Times write/read round trips of the components that GameServer 
+ *  registers for the network, comparing the reflective FieldSerializer 
+ *  with the compact hand-written serializers.  Each benchmark also reports the 
+ *  encoded size of its value, including the class header, as a 'bytes' 
+ *  secondary result.  The decoded values are checked against the originals 
+ *  within the compact encodings' resolution once per trial.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"field", "compact"})
+    public String format;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private Position position;
+    private SphereShape shape;
+    private ObjectType type;
+    private Name name;
+    private Quaternion quat;
+ 
+    /**
+     *  Carries the encoded size of the last round trip into JMH's 
+     *  secondary results so that the formats can be compared on size 
+     *  as well as speed.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long bytes;
+    }
+ 
+    @Setup
+    public void setup() throws IOException {
+        Serializer.initialize();
+        Serializer.registerClass(Vec3d.class, new FieldSerializer());
+        Serializer.registerClass(Quatd.class, new FieldSerializer());
+        if( "compact".equals(format) ) {
+            Serializer.registerClass(ObjectType.class, new ObjectTypeSerializer());
+            Serializer.registerClass(Position.class, new PositionSerializer());
+            Serializer.registerClass(SphereShape.class, new SphereShapeSerializer());
+            Serializer.registerClass(Name.class, new NameSerializer());
+            Serializer.registerClass(Quaternion.class, new QuaternionSerializer());
+        } else {
+            Serializer.registerClass(ObjectType.class, new FieldSerializer());
+            Serializer.registerClass(Position.class, new FieldSerializer());
+            Serializer.registerClass(SphereShape.class, new FieldSerializer());
+            Serializer.registerClass(Name.class, new FieldSerializer());
+            Serializer.registerClass(Quaternion.class, new FieldSerializer());
+        }
+        
+        position = new Position(new Vec3d(12.5, -3.25, 100), new Quatd().fromAngles(0.1, 0.2, 0.3));
+        shape = new SphereShape(3, new Vec3d());
+        type = new ObjectType(7);
+        name = new Name("player-one");
+        quat = new Quaternion().fromAngles(0.4f, -1.2f, 0.05f);
+        
+        verify();
+    }
+ 
+    private Object roundTrip( Object value ) throws IOException {
+        buffer.clear();
+        Serializer.writeClassAndObject(buffer, value);
+        buffer.flip();
+        return Serializer.readClassAndObject(buffer);
+    }
+ 
+    private Object roundTrip( Object value, EncodedSize size ) throws IOException {
+        Object result = roundTrip(value);
+        size.bytes = buffer.limit();
+        return result;
+    }
+ 
+    private static void check( String what, double expected, double actual, double epsilon ) {
+        if( Math.abs(expected - actual) > epsilon ) {
+            throw new IllegalStateException(what + " round trip mismatch, expected:" + expected 
+                                            + " actual:" + actual);
+        }
+    }
+ 
+    private static double dot( Quatd q1, Quatd q2 ) {
+        return q1.x * q2.x + q1.y * q2.y + q1.z * q2.z + q1.w * q2.w;
+    }
+ 
+    /**
+     *  Checks that everything survives the round trip.
+     */
+    private void verify() throws IOException {
+        double posEpsilon = 1.0 / 4096;
+        double rotEpsilon = 1e-4;
+        
+        Position p = (Position)roundTrip(position);
+        check("Position.x", position.getLocation().x, p.getLocation().x, posEpsilon);
+        check("Position.y", position.getLocation().y, p.getLocation().y, posEpsilon);
+        check("Position.z", position.getLocation().z, p.getLocation().z, posEpsilon);
+        // q and -q are the same rotation so compare by the dot product
+        check("Position.facing", 1, Math.abs(dot(position.getFacing(), p.getFacing())), rotEpsilon);
+        
+        SphereShape s = (SphereShape)roundTrip(shape);
+        check("SphereShape.radius", shape.getRadius(), s.getRadius(), posEpsilon);
+        check("SphereShape.offset", 0, s.getCenterOffset().length(), posEpsilon);
+        
+        ObjectType t = (ObjectType)roundTrip(type);
+        check("ObjectType", type.getType(), t.getType(), 0);
+        
+        Name n = (Name)roundTrip(name);
+        if( !name.getName().equals(n.getName()) ) {
+            throw new IllegalStateException("Name round trip mismatch:" + n.getName());
+        }
+        
+        Quaternion q = (Quaternion)roundTrip(quat);
+        check("Quaternion", 1, Math.abs(quat.dot(q)), rotEpsilon);
+    }
+ 
+    @Benchmark
+    public Object position( EncodedSize size ) throws IOException {
+        return roundTrip(position, size);
+    }
+ 
+    @Benchmark
+    public Object sphereShape( EncodedSize size ) throws IOException {
+        return roundTrip(shape, size);
+    }
+ 
+    @Benchmark
+    public Object objectType( EncodedSize size ) throws IOException {
+        return roundTrip(type, size);
+    }
+ 
+    @Benchmark
+    public Object name( EncodedSize size ) throws IOException {
+        return roundTrip(name, size);
+    }
+ 
+    @Benchmark
+    public Object quaternion( EncodedSize size ) throws IOException {
+        return roundTrip(quat, size);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.benchmarks;
+
+import com.simsilica.ethereal.zone.ZoneManager;
+import com.waffleware.example.common.remote.GameConstants;
+import com.waffleware.example.server.systems.ZoneNetworkSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Times a physics update with ZoneNetworkSystem forwarding every moving 
+ *  body into a real ZoneManager using the game's zone grid.  The zone 
+ *  history is purged every update the same way the Ethereal state 
+ *  collector would.  Compare against PhysicsBenchmark at the same body
+ *  count to get the cost of the forwarding itself.
+ *
+ *  @author    Paul Speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoneNetworkBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int bodies;
+ 
+    private BenchmarkWorld world;
+    private ZoneManager zones;
+ 
+    @Setup
+    public void setup() {
+        world = new BenchmarkWorld();
+        zones = new ZoneManager(GameConstants.ZONE_GRID);
+        world.addSystem(new ZoneNetworkSystem(zones));
+        world.start(bodies, 1024, 42);
+        zones.purgeState();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        world.stop();
+    }
+ 
+    @Benchmark
+    public Object update() {
+        world.update();
+        return zones.purgeState();
+    }
+}
@@ -50,6 +50,7 @@ import com.simsilica.ethereal.TimeSource;
 import com.waffleware.example.client.services.AccountClientService;
 import com.waffleware.example.client.services.ChatClientService;
 import com.waffleware.example.client.services.GameSessionClientService;
+import com.waffleware.example.client.services.HandshakeClientService;
 import com.waffleware.example.client.services.SharedObjectUpdater;
 import com.waffleware.example.common.remote.GameConstants;
 import org.slf4j.Logger;
@@ -81,6 +82,7 @@ public class GameClient {
         log.info("Adding services...");                                             
         client.getServices().addServices(new RpcClientService(),
                                          new RmiClientService(),
+                                         new HandshakeClientService(),
                                          new AccountClientService(),
                                          new GameSessionClientService(),
                                          new EntityDataClientService(GameConstants.ES_CHANNEL),
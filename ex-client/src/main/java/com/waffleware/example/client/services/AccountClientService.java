@@ -36,6 +36,7 @@
 
 package com.waffleware.example.client.services;
 
+import com.jme3.network.Client;
 import com.jme3.network.service.AbstractClientService;
 import com.jme3.network.service.ClientServiceManager;
 import com.jme3.network.service.rmi.RmiClientService;
@@ -105,22 +106,36 @@ public class AccountClientService extends AbstractClientService
         }
         log.debug("Sharing session callback.");  
         rmiService.share(sessionCallback, AccountSessionListener.class);
+ 
+        // The server only shares the account session once the handshake 
+        // is done.  We register first so that the delegate is set before 
+        // anyone else hears that the connection is ready.
+        HandshakeClientService handshake = getService(HandshakeClientService.class);
+        if( handshake == null ) {
+            throw new RuntimeException("AccountClientService requires HandshakeClientService");
+        }
+        handshake.addConnectionReadyListener(new ReadyObserver());
     }
  
     /**
-     *  Called during connection setup once the server-side services have been initialized
-     *  for this connection and any shared objects, etc. should be available.
+     *  Called when the server has finished setting up its services for this 
+     *  connection and the account session should be available.
      */   
-    @Override
-    public void start() {
-        log.debug("start()");
-        super.start();
+    protected void connectionReady() {
+        log.debug("connectionReady()");
         this.delegate = rmiService.getRemoteObject(AccountSession.class);
         log.debug("delegate:" + delegate);       
         if( delegate == null ) {
             throw new RuntimeException("No account session found during connection setup");
         }
     }
+ 
+    private class ReadyObserver implements ConnectionReadyListener {
+        @Override
+        public void connectionReady( Client client ) {
+            AccountClientService.this.connectionReady();
+        }
+    }
     
     /**
      *  Shared with the server over RMI so that it can notify us about account
@@ -135,6 +150,14 @@ public class AccountClientService extends AbstractClientService
                 l.notifyLoginStatus(loggedIn);
             }
         }
+ 
+        @Override   
+        public void notifyQueuePosition( int position ) {
+            log.trace("notifyQueuePosition(" + position + ")");
+            for( AccountSessionListener l : listeners ) {
+                l.notifyQueuePosition(position);
+            }
+        }
         
     }
 }
@@ -45,11 +45,16 @@ import com.waffleware.example.communication.sessions.ChatSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- *  Client-side service providing access to the chat server.
+ *  Client-side service providing access to the chat server.  The player
+ *  roster is pushed by the server as versioned changes and kept locally, 
+ *  so getPlayerNames() does not need to call the server.
  *
  *  @author    Paul Speed
  */
@@ -69,6 +74,10 @@ public class ChatClientService
     private ChatSessionCallback       sessionCallback = new ChatSessionCallback();
     private List<ChatSessionListener> listeners       = new CopyOnWriteArrayList<>();
  
+    // Guarded by the roster map itself
+    private final Map<Integer, String> roster = new LinkedHashMap<>();
+    private int rosterVersion = -1;
+ 
     /**
      *  Creates a new chat service that will use the default reliable
      *  channel for communication.
@@ -90,10 +99,37 @@ public class ChatClientService
         getDelegate().sendMessage(message);
     }
 
+    /**
+     *  Returns the players currently in the chat from the local copy of
+     *  the roster.  This is empty until the server's first snapshot has
+     *  arrived.
+     */
     @Override
     public List<String> getPlayerNames() {
-        return getDelegate().getPlayerNames();
+        synchronized( roster ) {
+            return new ArrayList<>(roster.values());
+        }
     }        
+ 
+    /**
+     *  Returns the version of the local roster copy or -1 if no snapshot
+     *  has been received yet.
+     */
+    public int getRosterVersion() {
+        synchronized( roster ) {
+            return rosterVersion;
+        }
+    }
+ 
+    @Override
+    public void requestRoster() {
+        getDelegate().requestRoster();
+    }
+ 
+    @Override
+    public void chatEventsReceived( int batches ) {
+        getDelegate().chatEventsReceived(batches);
+    }
         
     /**
      *  Adds a listener that will be notified about account-related events.
@@ -180,6 +216,58 @@ public class ChatClientService
                 l.playerLeft(clientId, playerName);
             }
         }
+ 
+        @Override   
+        public void chatEvents( int[] kinds, int[] clientIds, String[] playerNames, String[] messages ) {
+            ChatSessionListener.super.chatEvents(kinds, clientIds, playerNames, messages);
+            
+            // Let the server know that we are keeping up
+            chatEventsReceived(1);
+        }
+ 
+        @Override   
+        public void rosterSnapshot( int version, int[] clientIds, String[] playerNames ) {
+            if( log.isTraceEnabled() ) {            
+                log.trace("rosterSnapshot(" + version + ", " + clientIds.length + " players)");
+            }
+            synchronized( roster ) {
+                roster.clear();
+                for( int i = 0; i < clientIds.length; i++ ) {
+                    roster.put(clientIds[i], playerNames[i]);
+                }
+                rosterVersion = version;
+            }
+        }
+ 
+        @Override   
+        public void rosterChanged( int version, int[] kinds, int[] clientIds, String[] playerNames ) {
+            if( log.isTraceEnabled() ) {            
+                log.trace("rosterChanged(" + version + ", " + kinds.length + " changes)");
+            }
+            synchronized( roster ) {
+                if( rosterVersion < 0 ) {
+                    // Still waiting for the first snapshot which will
+                    // already include this
+                    return;
+                }
+                if( rosterVersion + kinds.length != version ) {
+                    log.warn("Roster version gap, have:" + rosterVersion + " got:" + version 
+                             + " with " + kinds.length + " changes.  Requesting a new snapshot.");
+                    rosterVersion = -1;
+                } else {
+                    for( int i = 0; i < kinds.length; i++ ) {
+                        if( kinds[i] == EVENT_JOINED ) {
+                            roster.put(clientIds[i], playerNames[i]);
+                        } else {
+                            roster.remove(clientIds[i]);
+                        }
+                    }
+                    rosterVersion = version;
+                    return;
+                }
+            }
+            requestRoster();
+        }
     }
 }
 
@@ -82,11 +82,11 @@ public class GameSessionClientService extends AbstractClientService
     }
     
     @Override
-    public void move(Quaternion dir, Vector3f thrust ) {
+    public void move(int sequence, Quaternion dir, Vector3f thrust ) {
         if( log.isTraceEnabled() ) {
-            log.trace("move(" + dir + ", " + thrust + ")");
+            log.trace("move(" + sequence + ", " + dir + ", " + thrust + ")");
         }
-        getDelegate().move(dir, thrust);
+        getDelegate().move(sequence, dir, thrust);
     }
 
     private GameSession getDelegate() {
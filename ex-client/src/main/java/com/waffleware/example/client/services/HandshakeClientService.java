@@ -0,0 +1,146 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.client.services;
+
+import com.jme3.network.Client;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.service.AbstractClientService;
+import com.jme3.network.service.ClientServiceManager;
+import com.waffleware.example.common.remote.handshake.ClientReadyMessage;
+import com.waffleware.example.common.remote.handshake.ConnectionReadyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  The client half of the server's HandshakeHostedService.  Once the
+ *  connection is established, and so the server's serializer registrations 
+ *  have been read, this tells the server that it is safe to start its
+ *  services.  Listeners are notified when the server replies.  Until then,
+ *  the server-side shared objects like the AccountSession do not exist.
+ *
+ *  @author    Paul Speed
+ */
+public class HandshakeClientService extends AbstractClientService {
+
+    static Logger log = LoggerFactory.getLogger(HandshakeClientService.class);
+
+    private ReadyObserver readyObserver = new ReadyObserver();
+    private List<ConnectionReadyListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean ready;
+    
+    public HandshakeClientService() {
+    }
+ 
+    public boolean isReady() {
+        return ready;
+    }
+ 
+    /**
+     *  Adds a listener that will be notified when the connection is ready.
+     *  If the connection is already ready then the listener is notified
+     *  right away on the calling thread.
+     */
+    public void addConnectionReadyListener( ConnectionReadyListener l ) {
+        boolean notify;
+        synchronized( listeners ) {
+            listeners.add(l);
+            notify = ready;
+        }
+        if( notify ) {
+            l.connectionReady(getClient());
+        }
+    }
+    
+    public void removeConnectionReadyListener( ConnectionReadyListener l ) {
+        listeners.remove(l);
+    }
+ 
+    @Override
+    protected void onInitialize( ClientServiceManager s ) {
+        log.debug("onInitialize(" + s + ")");
+        getClient().addMessageListener(readyObserver, ConnectionReadyMessage.class);
+    }
+ 
+    /**
+     *  Called when the connection is established.  Serializer registrations
+     *  are sent before the server acknowledges the connection, so they have
+     *  already been applied by now.
+     */   
+    @Override
+    public void start() {
+        log.debug("start()");
+        super.start();
+        getClient().send(new ClientReadyMessage());
+    }
+ 
+    @Override
+    public void stop() {
+        ready = false;
+        super.stop();
+    }
+ 
+    @Override
+    public void terminate( ClientServiceManager s ) {
+        getClient().removeMessageListener(readyObserver, ConnectionReadyMessage.class);
+        super.terminate(s);
+    }
+ 
+    protected void connectionReady() {
+        log.debug("connectionReady()");
+        ConnectionReadyListener[] array;
+        synchronized( listeners ) {
+            // Anything added after this will be notified as it is added
+            ready = true;
+            array = listeners.toArray(new ConnectionReadyListener[listeners.size()]);
+        }
+        Client client = getClient();
+        for( ConnectionReadyListener l : array ) {
+            l.connectionReady(client);
+        }
+    }
+ 
+    private class ReadyObserver implements MessageListener<Client> {
+        @Override
+        public void messageReceived( Client source, Message m ) {
+            connectionReady();
+        }
+    }
+}
@@ -55,6 +55,8 @@ import com.simsilica.lemur.OptionPanelState;
 import com.simsilica.state.CompositeAppState;
 import com.waffleware.example.client.GameClient;
 import com.waffleware.example.client.services.AccountClientService;
+import com.waffleware.example.client.services.ConnectionReadyListener;
+import com.waffleware.example.client.services.HandshakeClientService;
 import com.waffleware.example.common.remote.GameConstants;
 import com.waffleware.example.communication.listeners.AccountSessionListener;
 import com.waffleware.example.game.states.GameSessionState;
@@ -84,6 +86,7 @@ public class ConnectionState
     private Thread renderThread;
  
     private OptionPanel connectingPanel;
+    private OptionPanel queuePanel;
  
     private volatile boolean closing;
     
@@ -137,10 +140,20 @@ public class ConnectionState
         return true;        
     }
     
+    protected void onQueuePosition( int position ) {
+        closeQueuePanel();
+        queuePanel = new OptionPanel("Waiting to join... " + position + " ahead of you", 
+                                     new ExitAction("Cancel", true));
+        getState(OptionPanelState.class).show(queuePanel);
+    }
+    
     protected void onLoggedOn( boolean loggedIn ) {
+        closeQueuePanel();
         if( !loggedIn ) {
-            // We'd want to present an error... but right now this will
-            // never happen.
+            // Currently this only happens when the server's login
+            // queue is full
+            showError("Join Error", "The server is too busy, please try again later.", null, true);
+            return;
         }
 
         // Retrieve the time source from the network connection
@@ -177,6 +190,7 @@ public class ConnectionState
 
         // Close the connecting panel if it's still open
         closeConnectingPanel();
+        closeQueuePanel();
 
         // And re-enable the parent
         this.parent.setEnabled(true);
@@ -187,6 +201,13 @@ public class ConnectionState
             getState(OptionPanelState.class).close();
         }        
     }
+ 
+    protected void closeQueuePanel() {
+        if( queuePanel != null && getState(OptionPanelState.class).getCurrent() == queuePanel ) {
+            getState(OptionPanelState.class).close();
+        }
+        queuePanel = null;
+    }
     
     @Override   
     protected void onEnable() {
@@ -287,10 +308,15 @@ public class ConnectionState
         }                    
     }
     
-    private class ConnectionObserver implements ClientStateListener, ErrorListener<Client>
+    private class ConnectionObserver implements ClientStateListener, ErrorListener<Client>,
+                                                ConnectionReadyListener
     {
         public void clientConnected( final Client c ) {
             log.info("clientConnected(" + c + ")");
+        }
+ 
+        public void connectionReady( final Client c ) {
+            log.info("connectionReady(" + c + ")");
             getApplication().enqueue(new Callable() {
                     public Object call() {
                         onConnected();
@@ -326,6 +352,15 @@ public class ConnectionState
                     }
                  });
         }
+ 
+        public void notifyQueuePosition( final int position ) {
+            getApplication().enqueue(new Callable() {
+                    public Object call() {
+                        onQueuePosition(position);
+                        return null;
+                    }
+                 });
+        }
     }
 
     private class Connector extends Thread {
@@ -344,6 +379,7 @@ public class ConnectionState
                 setClient(client);
                 client.getClient().addClientStateListener(connectionObserver);
                 client.getClient().addErrorListener(connectionObserver);
+                client.getService(HandshakeClientService.class).addConnectionReadyListener(connectionObserver);
                 if( closing ) {
                     return;
                 }
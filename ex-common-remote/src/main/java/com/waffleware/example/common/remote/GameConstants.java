@@ -84,6 +84,12 @@ public class GameConstants
     // with each new zone, more network messages, etc..  Finding the sweet spot
     // will depend largely on the game.
     private static final int gridSize = 64;
+
+    /**
+     *  The size of a network zone along each axis.  Spatial structures that 
+     *  want their cells to line up with the zones should use a factor of this.
+     */
+    public static final int ZONE_SIZE = gridSize;
     
     /**
      *  The 3D zone grid definition that defines how space is broken
@@ -105,6 +111,12 @@ public class GameConstants
                                                               gridSize + MAX_OBJECT_RADIUS,
                                                               16);
  
+    /**
+     *  The smallest position change that POSITION_BITS can represent.  Changes
+     *  smaller than this never make it to the clients anyway.
+     */                                                              
+    public static final double POSITION_RESOLUTION = (gridSize + 2 * MAX_OBJECT_RADIUS) / 65535.0; 
+ 
     /** 
      *  Defines how many network message bits to encode the elements of rotation
      *  fields.  Given that rotation Quaternion values are always between -1 and 1,
@@ -112,6 +124,12 @@ public class GameConstants
      */
     public static final QuatBits ROTATION_BITS = new QuatBits(12);
  
+    /**
+     *  The smallest change in any quaternion component that ROTATION_BITS
+     *  can represent.
+     */
+    public static final double ROTATION_RESOLUTION = 2.0 / 4095.0;
+ 
     /**
      *  Defines the overall object protocol parameters for how many bits ar used
      *  to encode the various parts of an object update message.  
@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.common.remote.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+import com.waffleware.example.entity.data.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ *  Writes Position components as a flags byte followed by fixed-point
+ *  varint coordinates and a smallest-three quaternion.  An identity facing
+ *  costs nothing beyond the flag.  Location is quantized to 
+ *  1/WireFormat.POSITION_SCALE and facing components to about 4e-5.
+ *
+ *  @author    Paul Speed
+ */
+public class PositionSerializer extends Serializer {
+
+    private static final int HAS_LOCATION = 0x01;
+    private static final int HAS_FACING = 0x02;
+    private static final int IDENTITY_FACING = 0x04;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject( ByteBuffer data, Class<T> c ) throws IOException {
+        int flags = data.get();
+        Vec3d location = null;
+        if( (flags & HAS_LOCATION) != 0 ) {
+            location = new Vec3d(WireFormat.readFixed(data), 
+                                 WireFormat.readFixed(data), 
+                                 WireFormat.readFixed(data));
+        }
+        Quatd facing = null;
+        if( (flags & IDENTITY_FACING) != 0 ) {
+            facing = new Quatd();
+        } else if( (flags & HAS_FACING) != 0 ) {
+            double[] q = WireFormat.readQuat(data, new double[4]);
+            facing = new Quatd(q[0], q[1], q[2], q[3]);
+        }
+        return (T)new Position(location, facing);
+    }
+
+    @Override
+    public void writeObject( ByteBuffer buffer, Object object ) throws IOException {
+        Position pos = (Position)object;
+        Vec3d location = pos.getLocation();
+        Quatd facing = pos.getFacing();
+        
+        int flags = 0;
+        if( location != null ) {
+            flags |= HAS_LOCATION;
+        }
+        if( facing != null ) {
+            if( facing.x == 0 && facing.y == 0 && facing.z == 0 && facing.w == 1 ) {
+                flags |= IDENTITY_FACING;
+            } else {
+                flags |= HAS_FACING;
+            }
+        }
+        buffer.put((byte)flags);
+        
+        if( location != null ) {
+            WireFormat.writeFixed(buffer, location.x);
+            WireFormat.writeFixed(buffer, location.y);
+            WireFormat.writeFixed(buffer, location.z);
+        }
+        if( (flags & HAS_FACING) != 0 ) {
+            WireFormat.writeQuat(buffer, facing.x, facing.y, facing.z, facing.w);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.common.remote.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.simsilica.mathd.Vec3d;
+import com.waffleware.example.entity.data.SphereShape;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ *  Writes SphereShape components as a fixed-point varint radius and
+ *  an optional fixed-point center offset.  A zero offset, the common
+ *  case, is a single flag byte.
+ *
+ *  @author    Paul Speed
+ */
+public class SphereShapeSerializer extends Serializer {
+
+    private static final int HAS_OFFSET = 0x01;
+    private static final int ZERO_OFFSET = 0x02;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readObject( ByteBuffer data, Class<T> c ) throws IOException {
+        int flags = data.get();
+        double radius = WireFormat.readFixed(data);
+        Vec3d offset = null;
+        if( (flags & ZERO_OFFSET) != 0 ) {
+            offset = new Vec3d();
+        } else if( (flags & HAS_OFFSET) != 0 ) {
+            offset = new Vec3d(WireFormat.readFixed(data), 
+                               WireFormat.readFixed(data), 
+                               WireFormat.readFixed(data));
+        }
+        return (T)new SphereShape(radius, offset);
+    }
+
+    @Override
+    public void writeObject( ByteBuffer buffer, Object object ) throws IOException {
+        SphereShape shape = (SphereShape)object;
+        Vec3d offset = shape.getCenterOffset();
+        
+        int flags = 0;
+        if( offset != null ) {
+            if( offset.x == 0 && offset.y == 0 && offset.z == 0 ) {
+                flags |= ZERO_OFFSET;
+            } else {
+                flags |= HAS_OFFSET;
+            }
+        }
+        buffer.put((byte)flags);
+        WireFormat.writeFixed(buffer, shape.getRadius());
+        if( (flags & HAS_OFFSET) != 0 ) {
+            WireFormat.writeFixed(buffer, offset.x);
+            WireFormat.writeFixed(buffer, offset.y);
+            WireFormat.writeFixed(buffer, offset.z);
+        }
+    }
+}
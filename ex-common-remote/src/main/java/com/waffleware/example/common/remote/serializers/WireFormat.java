@@ -0,0 +1,251 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.common.remote.serializers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  The primitive encodings shared by the compact serializers: unsigned
+ *  and zig-zag varints, fixed-point coordinates, smallest-three quaternions,
+ *  and length-prefixed UTF-8 strings.
+ *
+ *  @author    Paul Speed
+ */
+public final class WireFormat {
+ 
+    /**
+     *  Fixed-point coordinates are written in 1/4096ths of a unit which is
+     *  about four times finer than the SimEthereal position resolution.
+     */
+    public static final double POSITION_SCALE = 4096;
+ 
+    /**
+     *  The number of bits for each of the three smallest quaternion
+     *  components.
+     */   
+    public static final int QUAT_BITS = 15;
+    
+    private static final int QUAT_MAX = (1 << QUAT_BITS) - 1;
+    private static final long QUAT_MASK = QUAT_MAX;
+    private static final double SQRT2 = Math.sqrt(2);
+    
+    private WireFormat() {
+    }
+ 
+    public static void writeVarInt( ByteBuffer buffer, int value ) {
+        while( (value & ~0x7f) != 0 ) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+    
+    public static int readVarInt( ByteBuffer buffer ) throws IOException {
+        int result = 0;
+        for( int shift = 0; shift < 35; shift += 7 ) {
+            byte b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if( (b & 0x80) == 0 ) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    public static void writeVarLong( ByteBuffer buffer, long value ) {
+        while( (value & ~0x7fL) != 0 ) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+    
+    public static long readVarLong( ByteBuffer buffer ) throws IOException {
+        long result = 0;
+        for( int shift = 0; shift < 70; shift += 7 ) {
+            byte b = buffer.get();
+            result |= (long)(b & 0x7f) << shift;
+            if( (b & 0x80) == 0 ) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+ 
+    /**
+     *  Writes a signed value as a zig-zag varlong so that small negative 
+     *  numbers stay small.
+     */   
+    public static void writeSignedVarLong( ByteBuffer buffer, long value ) {
+        writeVarLong(buffer, (value << 1) ^ (value >> 63));
+    }
+    
+    public static long readSignedVarLong( ByteBuffer buffer ) throws IOException {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+ 
+    /**
+     *  Writes a coordinate as a zig-zag varlong in POSITION_SCALE units.
+     *  Round numbers near the origin take only a byte or two.
+     */   
+    public static void writeFixed( ByteBuffer buffer, double value ) {
+        writeSignedVarLong(buffer, Math.round(value * POSITION_SCALE));
+    }
+    
+    public static double readFixed( ByteBuffer buffer ) throws IOException {
+        return readSignedVarLong(buffer) / POSITION_SCALE;
+    }
+ 
+    /**
+     *  Writes a unit quaternion in 6 bytes by dropping its largest component,
+     *  which can be recomputed from the other three, and quantizing the rest.  
+     *  The largest component is made positive first since q and -q are the 
+     *  same rotation.
+     */   
+    public static void writeQuat( ByteBuffer buffer, double x, double y, double z, double w ) {
+        double ax = Math.abs(x);
+        double ay = Math.abs(y);
+        double az = Math.abs(z);
+        double aw = Math.abs(w);
+        int largest = 0;
+        double max = ax;
+        if( ay > max ) {
+            largest = 1;
+            max = ay;
+        }
+        if( az > max ) {
+            largest = 2;
+            max = az;
+        }
+        if( aw > max ) {
+            largest = 3;
+        }
+        
+        double a, b, c;
+        double sign;
+        switch( largest ) {
+            case 0:
+                sign = x < 0 ? -1 : 1;
+                a = y; b = z; c = w;
+                break;
+            case 1:
+                sign = y < 0 ? -1 : 1;
+                a = x; b = z; c = w;
+                break;
+            case 2:
+                sign = z < 0 ? -1 : 1;
+                a = x; b = y; c = w;
+                break;
+            default:
+                sign = w < 0 ? -1 : 1;
+                a = x; b = y; c = z;
+                break;
+        }
+        long bits = ((long)largest << (QUAT_BITS * 3))
+                  | (quantize(a * sign) << (QUAT_BITS * 2))
+                  | (quantize(b * sign) << QUAT_BITS)
+                  | quantize(c * sign);
+        buffer.putShort((short)(bits >>> 32));
+        buffer.putInt((int)bits);
+    }
+ 
+    /**
+     *  Reads a quaternion written by writeQuat() into the x, y, z, w elements
+     *  of the result array and returns it.
+     */   
+    public static double[] readQuat( ByteBuffer buffer, double[] result ) {
+        long bits = ((buffer.getShort() & 0xffffL) << 32) | (buffer.getInt() & 0xffffffffL);
+        int largest = (int)(bits >>> (QUAT_BITS * 3)) & 0x3;
+        double a = dequantize((bits >>> (QUAT_BITS * 2)) & QUAT_MASK);
+        double b = dequantize((bits >>> QUAT_BITS) & QUAT_MASK);
+        double c = dequantize(bits & QUAT_MASK);
+        double d = Math.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+        switch( largest ) {
+            case 0:
+                result[0] = d; result[1] = a; result[2] = b; result[3] = c;
+                break;
+            case 1:
+                result[0] = a; result[1] = d; result[2] = b; result[3] = c;
+                break;
+            case 2:
+                result[0] = a; result[1] = b; result[2] = d; result[3] = c;
+                break;
+            default:
+                result[0] = a; result[1] = b; result[2] = c; result[3] = d;
+                break;
+        }
+        return result;
+    }
+    
+    private static long quantize( double value ) {
+        // The non-largest components are always within +/- 1/sqrt(2)
+        double n = (value * SQRT2 + 1) * 0.5;
+        return Math.max(0, Math.min(QUAT_MAX, Math.round(n * QUAT_MAX)));
+    }
+    
+    private static double dequantize( long value ) {
+        return ((double)value / QUAT_MAX * 2 - 1) / SQRT2;
+    }
+ 
+    /**
+     *  Writes a string as a varint byte length followed by its UTF-8 bytes.  
+     *  Null is written as a length of 0 and an empty string as 1, with
+     *  every other length offset by one.
+     */   
+    public static void writeString( ByteBuffer buffer, String value ) {
+        if( value == null ) {
+            writeVarInt(buffer, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+    
+    public static String readString( ByteBuffer buffer ) throws IOException {
+        int length = readVarInt(buffer);
+        if( length == 0 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
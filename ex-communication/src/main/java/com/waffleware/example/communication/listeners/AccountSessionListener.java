@@ -58,4 +58,14 @@ public interface AccountSessionListener {
      */
     @Asynchronous
     void notifyLoginStatus(boolean loggedIn);
+ 
+    /**
+     *  Called by the server while a login is waiting in the admission
+     *  queue with the number of logins still ahead of it.  This is sent 
+     *  when the login is first queued and then periodically until
+     *  notifyLoginStatus() is called.
+     */
+    @Asynchronous
+    default void notifyQueuePosition(int position) {
+    }
 }
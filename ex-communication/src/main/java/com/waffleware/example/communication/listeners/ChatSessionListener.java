@@ -46,6 +46,9 @@ import com.jme3.network.service.rmi.Asynchronous;
  */
 public interface ChatSessionListener
 {
+    public static final int EVENT_JOINED = 0;
+    public static final int EVENT_MESSAGE = 1;
+    public static final int EVENT_LEFT = 2;
     
     /**
      *  Called when a new player has joined the chat.
@@ -64,5 +67,50 @@ public interface ChatSessionListener
      */
     @Asynchronous
     void playerLeft(int clientId, String playerName);
-    
+ 
+    /**
+     *  Called by the server with all of the chat events that happened within
+     *  one batching window, in order, so that a busy chat costs one call per
+     *  window instead of one per event.  The arrays are parallel.  kinds holds
+     *  EVENT_JOINED, EVENT_MESSAGE, or EVENT_LEFT, and messages is null for
+     *  anything other than EVENT_MESSAGE.  By default this just calls the 
+     *  single event methods.
+     */
+    @Asynchronous
+    default void chatEvents(int[] kinds, int[] clientIds, String[] playerNames, String[] messages) {
+        for( int i = 0; i < kinds.length; i++ ) {
+            switch( kinds[i] ) {
+                case EVENT_JOINED:
+                    playerJoined(clientIds[i], playerNames[i]);
+                    break;
+                case EVENT_MESSAGE:
+                    newMessage(clientIds[i], playerNames[i], messages[i]);
+                    break;
+                case EVENT_LEFT:
+                    playerLeft(clientIds[i], playerNames[i]);
+                    break;
+            }
+        }
+    }
+ 
+    /**
+     *  Called by the server with the full player roster as of the specified
+     *  version.  This is sent when the player first enters the chat and 
+     *  whenever the client asks for it with ChatSession.requestRoster().
+     */
+    @Asynchronous
+    default void rosterSnapshot(int version, int[] clientIds, String[] playerNames) {
+    }
+ 
+    /**
+     *  Called by the server with the roster changes made since the last
+     *  snapshot or change.  kinds holds EVENT_JOINED or EVENT_LEFT for each
+     *  change, in order.  Every change increments the version by one, so the
+     *  client's version plus kinds.length should equal the specified version.  
+     *  If it does not, the client has missed something and should request a
+     *  new snapshot.
+     */
+    @Asynchronous
+    default void rosterChanged(int version, int[] kinds, int[] clientIds, String[] playerNames) {
+    }
 }
@@ -55,7 +55,26 @@ public interface ChatSession
     void sendMessage(String message);
 
     /**
-     *  Returns the list of players currently in the chat.
+     *  Returns the list of players currently in the chat.  The server pushes
+     *  the roster to the client's ChatSessionListener as it changes, so a 
+     *  client can answer this from its local copy.  Calling it over RMI is
+     *  a synchronous round trip.
      */
     List<String> getPlayerNames();
+ 
+    /**
+     *  Asks the server to send a full rosterSnapshot() to the client's
+     *  ChatSessionListener, such as when a gap in the roster versions has
+     *  been detected.
+     */
+    @Asynchronous
+    void requestRoster();
+ 
+    /**
+     *  Tells the server that the client has processed the specified number
+     *  of ChatSessionListener.chatEvents() batches.  The server stops sending
+     *  batches to a client that has too many of them unacknowledged.
+     */
+    @Asynchronous
+    void chatEventsReceived(int batches);
 }
@@ -62,8 +62,10 @@ public interface GameSession {
     /**
      *  Sends information to the game back end about the current
      *  movement state of the player from user input.  Because this
-     *  state is continuous, it doesn't need to be reliable.  
+     *  state is continuous, it doesn't need to be reliable.  The sequence
+     *  number should increase by one with every call so that the back end
+     *  can apply inputs in order and drop any that arrive late.
      */
     @Asynchronous(reliable=false)
-    void move(Quaternion rotation, Vector3f thrust);
+    void move(int sequence, Quaternion rotation, Vector3f thrust);
 }
@@ -40,6 +40,7 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.simsilica.es.EntityComponent;
 import com.simsilica.es.EntityId;
+import com.simsilica.mathd.Quatd;
 import com.simsilica.mathd.trans.PositionTransition;
 import com.simsilica.mathd.trans.TransitionBuffer;
 import com.waffleware.example.entity.data.caches.BodyPositionCache;
@@ -51,11 +52,24 @@ import com.waffleware.example.entity.data.caches.BodyPositionCache;
  *  Furthermore, special care is taken to make sure that all BodyPosition objecst for
  *  a particular entity share the internal data buffer.
  *
+ *  Frames can be recorded in two ways.  The Vector3f/Quaternion addFrame()
+ *  feeds the shared TransitionBuffer that the client side interpolates from.  
+ *  The primitive addFrame() writes into a preallocated PositionFrames ring 
+ *  instead and is meant for the server, where it is called for every moving 
+ *  body every frame and shouldn't create garbage.  The two are independent, 
+ *  a BodyPosition is normally only fed one way.  The server creates its 
+ *  components with createFrameRecorder(), which has no TransitionBuffer, so
+ *  that reading them through getBuffer() or getFrame() fails instead of 
+ *  quietly returning history that is never updated.  Its frame ring isn't
+ *  allocated until the first frame is actually recorded.
+ *
  *  @author    Paul Speed
  */
 public final class BodyPosition implements EntityComponent {
     private transient int size;
     private transient TransitionBuffer<PositionTransition> position;
+    private transient PositionFrames frames;
+    private transient boolean recorder;
 
     public BodyPosition() {
     }
@@ -65,6 +79,17 @@ public final class BodyPosition implements EntityComponent {
         this.position = PositionTransition.createBuffer(history);    
     }
  
+    /**
+     *  Creates a BodyPosition that only records into the primitive frame
+     *  ring.  Its frames are read with getFrames().
+     */
+    public static BodyPosition createFrameRecorder( int history ) {
+        BodyPosition result = new BodyPosition();
+        result.size = history;
+        result.recorder = true;
+        return result;
+    }
+ 
     /**
      *  Called for a retrieved entity to make sure this BodyPosition
      *  has it's shared transition buffer.  It must be called for
@@ -78,6 +103,9 @@ public final class BodyPosition implements EntityComponent {
     }
     
     public TransitionBuffer<PositionTransition> getBuffer() {
+        if( recorder ) {
+            throw new IllegalStateException("BodyPosition records into PositionFrames, use getFrames()");
+        }
         return position;
     }
  
@@ -89,6 +117,25 @@ public final class BodyPosition implements EntityComponent {
     public PositionTransition getFrame( long time ) {
         return getBuffer().getTransition(time);        
     }
+ 
+    /**
+     *  Returns the primitive frame ring, creating it with the history size
+     *  the first time it is needed.
+     */
+    public PositionFrames getFrames() {
+        if( frames == null ) {
+            frames = new PositionFrames(Math.max(2, size));
+        }
+        return frames;
+    }
+ 
+    /**
+     *  Records a frame into the primitive frame ring without creating
+     *  any garbage.  Only one thread should record frames this way.
+     */
+    public void addFrame( long endTime, double x, double y, double z, Quatd quat, boolean visible ) {
+        getFrames().add(endTime, x, y, z, quat.x, quat.y, quat.z, quat.w, visible);
+    }
     
     @Override
     public String toString() {
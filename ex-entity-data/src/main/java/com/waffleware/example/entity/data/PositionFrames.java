@@ -0,0 +1,198 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.entity.data;
+
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+
+/**
+ *  A fixed-size ring of timestamped position, rotation, and visibility
+ *  frames stored in preallocated primitive arrays.  Recording a frame
+ *  just overwrites the oldest slot so steady-state recording produces no 
+ *  garbage, unlike building a new PositionTransition for every frame.
+ *
+ *  There must only be one writing thread.  Frames are published to other
+ *  threads as a whole but a reader that is slow enough to still be looking
+ *  at the oldest frame when it gets overwritten can see a mix of the two
+ *  so readers on other threads should stick to recent times.
+ *
+ *  @author    Paul Speed
+ */
+public class PositionFrames {
+
+    private final int capacity;
+    private final long[] times;
+    private final double[] pos;
+    private final double[] rot;
+    private final boolean[] visible;
+ 
+    // Total number of frames ever written
+    private volatile long count;
+ 
+    public PositionFrames( int capacity ) {
+        this.capacity = Math.max(2, capacity);
+        this.times = new long[this.capacity];
+        this.pos = new double[this.capacity * 3];
+        this.rot = new double[this.capacity * 4];
+        this.visible = new boolean[this.capacity];
+    }
+ 
+    public int getCapacity() {
+        return capacity;
+    }
+ 
+    /**
+     *  Returns the number of frames currently available.
+     */   
+    public int size() {
+        return (int)Math.min(count, capacity);
+    }
+ 
+    /**
+     *  Records a frame, overwriting the oldest one if the ring is full.
+     *  Frames are expected to be added in time order.
+     */   
+    public void add( long time, double x, double y, double z, 
+                     double qx, double qy, double qz, double qw, boolean visible ) {
+        long c = count;
+        int slot = (int)(c % capacity);
+        int p = slot * 3;
+        int r = slot * 4;
+        times[slot] = time;
+        pos[p] = x;
+        pos[p + 1] = y;
+        pos[p + 2] = z;
+        rot[r] = qx;
+        rot[r + 1] = qy;
+        rot[r + 2] = qz;
+        rot[r + 3] = qw;
+        this.visible[slot] = visible;
+        count = c + 1;
+    }
+ 
+    public void add( long time, Vec3d pos, Quatd rot, boolean visible ) {
+        add(time, pos.x, pos.y, pos.z, rot.x, rot.y, rot.z, rot.w, visible);
+    }
+ 
+    /**
+     *  Returns the time of the newest frame or Long.MIN_VALUE if there
+     *  are no frames.
+     */   
+    public long getNewestTime() {
+        long c = count;
+        return c == 0 ? Long.MIN_VALUE : times[(int)((c - 1) % capacity)];
+    }
+ 
+    /**
+     *  Returns the time of the oldest frame still available or Long.MIN_VALUE 
+     *  if there are no frames.
+     */   
+    public long getOldestTime() {
+        long c = count;
+        if( c == 0 ) {
+            return Long.MIN_VALUE;
+        }
+        return times[(int)(Math.max(0, c - capacity) % capacity)];
+    }
+ 
+    /**
+     *  Fills in the interpolated position and rotation at the specified 
+     *  time and returns the visibility of the frame that starts the 
+     *  interpolated span.  Times before the oldest frame are clamped to the 
+     *  oldest frame and times after the newest are clamped to the newest.
+     *  Returns false without touching the outputs if there are no frames.
+     */   
+    public boolean getFrame( long time, Vec3d posResult, Quatd rotResult ) {
+        long c = count;
+        if( c == 0 ) {
+            return false;
+        }
+        long first = Math.max(0, c - capacity);
+        
+        // Walk backwards from the newest to find the frame at or before time
+        long i = c - 1;
+        while( i > first && times[(int)(i % capacity)] > time ) {
+            i--;
+        }
+        int a = (int)(i % capacity);
+        if( i == c - 1 || times[a] > time ) {
+            // Clamped to one end
+            copy(a, posResult, rotResult);
+            return visible[a];
+        }
+        int b = (int)((i + 1) % capacity);
+        long span = times[b] - times[a];
+        double t = span <= 0 ? 1 : (double)(time - times[a]) / span;
+        interpolate(a, b, t, posResult, rotResult);
+        return visible[a];
+    }
+ 
+    private void copy( int slot, Vec3d posResult, Quatd rotResult ) {
+        int p = slot * 3;
+        int r = slot * 4;
+        posResult.set(pos[p], pos[p + 1], pos[p + 2]);
+        rotResult.set(rot[r], rot[r + 1], rot[r + 2], rot[r + 3]);
+    }
+ 
+    private void interpolate( int a, int b, double t, Vec3d posResult, Quatd rotResult ) {
+        int pa = a * 3;
+        int pb = b * 3;
+        posResult.set(pos[pa] + (pos[pb] - pos[pa]) * t,
+                      pos[pa + 1] + (pos[pb + 1] - pos[pa + 1]) * t,
+                      pos[pa + 2] + (pos[pb + 2] - pos[pa + 2]) * t);
+        
+        // Normalized lerp along the shortest path is plenty for the small
+        // rotations between frames
+        int ra = a * 4;
+        int rb = b * 4;
+        double dot = rot[ra] * rot[rb] + rot[ra + 1] * rot[rb + 1] 
+                   + rot[ra + 2] * rot[rb + 2] + rot[ra + 3] * rot[rb + 3];
+        double sign = dot < 0 ? -1 : 1;
+        double x = rot[ra] + (rot[rb] * sign - rot[ra]) * t;
+        double y = rot[ra + 1] + (rot[rb + 1] * sign - rot[ra + 1]) * t;
+        double z = rot[ra + 2] + (rot[rb + 2] * sign - rot[ra + 2]) * t;
+        double w = rot[ra + 3] + (rot[rb + 3] * sign - rot[ra + 3]) * t;
+        double len = Math.sqrt(x * x + y * y + z * z + w * w);
+        if( len > 0 ) {
+            x /= len;
+            y /= len;
+            z /= len;
+            w /= len;
+        }
+        rotResult.set(x, y, z, w);
+    }
+}
@@ -40,11 +40,11 @@ import com.simsilica.es.EntityId;
 import com.simsilica.mathd.trans.PositionTransition;
 import com.simsilica.mathd.trans.TransitionBuffer;
 
-import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *  BodyPosition components hold a buffer that should be shared
@@ -54,6 +54,19 @@ import java.util.Map;
  *  of back into it by keeping a cache of the internal buffers.
  *  BodyPosition will check this cache when initialized.
  *
+ *  The buffers are weakly referenced so that they go away once no
+ *  BodyPosition is using them anymore and the dead entries are purged
+ *  as the cache is used.  Hits never lock.  Optionally, the cache can
+ *  be bounded to a maximum size.  Collected entries are purged first and
+ *  then a clock hand sweeps the entries to make room, giving the ones 
+ *  looked up since its last pass a second chance.  That approximates 
+ *  evicting the least recently used entries without any bookkeeping on 
+ *  hits beyond setting a flag, and it never evicts the entry that was just 
+ *  looked up.  An evicted buffer keeps working 
+ *  for the components that already have it but new lookups for that entity 
+ *  will get a new buffer so the bound should be set well above the number 
+ *  of entities expected to be live at once.
+ *
  *  @author    Paul Speed
  */
 public class BodyPositionCache {
@@ -72,30 +85,197 @@ public class BodyPositionCache {
      *  is that garbage hanging around is less bad if no one is requesting
      *  it anyway.
      */
-    private Map<EntityId, WeakReference<TransitionBuffer<PositionTransition>>> map = new HashMap<>();
+    private ConcurrentHashMap<EntityId, BufferRef> map = new ConcurrentHashMap<>();
+ 
+    private volatile int maxSize;
+    
+    // The eviction clock hand, guarded by 'this'
+    private Iterator<BufferRef> hand;
  
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder collected = new LongAdder();
     
     public static TransitionBuffer<PositionTransition> getBuffer( EntityId id, int size ) {
         return instance.get(id, size);
     }
  
-    protected synchronized TransitionBuffer<PositionTransition> get( EntityId id, int size ) {
+    public static BodyPositionCache getInstance() {
+        return instance;
+    }
+ 
+    /**
+     *  Sets the maximum number of entries to keep.  0, the default, means
+     *  there is no bound other than garbage collection.  Note that a bound
+     *  can break the sharing for live entities.  If more entities than this 
+     *  are in use at once then ones that haven't been looked up recently are evicted,
+     *  and a later lookup for one of them creates a new buffer that the 
+     *  components that already had the old one won't see.
+     */   
+    public void setMaxSize( int maxSize ) {
+        this.maxSize = Math.max(0, maxSize);
+        purge();
+        evictToSize(null);
+    }
     
-        // See if we've already got one
-        WeakReference<TransitionBuffer<PositionTransition>> result = map.get(id);
-        if( result == null || result.get() == null ) {
+    public int getMaxSize() {
+        return maxSize;
+    }
+ 
+    /**
+     *  Returns the current number of entries, some of which may have been 
+     *  collected but not purged yet.
+     */   
+    public int size() {
+        return map.size();
+    }
+ 
+    /**
+     *  Returns the number of lookups that found an existing buffer.
+     */   
+    public long getHitCount() {
+        return hits.sum();
+    }
+ 
+    /**
+     *  Returns the number of lookups that had to create a new buffer.
+     */   
+    public long getMissCount() {
+        return misses.sum();
+    }
+ 
+    /**
+     *  Returns the number of live entries that were evicted to stay
+     *  within the maximum size.
+     */   
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+ 
+    /**
+     *  Returns the number of entries that were purged because their
+     *  buffer was garbage collected.
+     */   
+    public long getCollectedCount() {
+        return collected.sum();
+    }
+ 
+    protected TransitionBuffer<PositionTransition> get( EntityId id, int size ) {
+        TransitionBuffer<PositionTransition> created = null;
+        while( true ) {
+            // See if we've already got one
+            BufferRef existing = map.get(id);
+            if( existing != null ) {
+                TransitionBuffer<PositionTransition> buffer = existing.get();
+                if( buffer != null ) {
+                    // Only written when the hand has cleared it, which
+                    // never happens when the cache is unbounded
+                    if( !existing.referenced ) {
+                        existing.referenced = true;
+                    }
+                    hits.increment();
+                    return buffer;
+                }
+            }
+            
             // Need to create a new one
-            TransitionBuffer<PositionTransition> buffer = PositionTransition.createBuffer(size);
-            result = new WeakReference<>(buffer);
-            map.put(id, result);    
+            if( created == null ) {
+                created = PositionTransition.createBuffer(size);
+            }
+            BufferRef ref = new BufferRef(id, created, refs);
+            boolean added = existing == null ? map.putIfAbsent(id, ref) == null 
+                                             : map.replace(id, existing, ref); 
+            if( added ) {
+                misses.increment();
+                break;
+            }
+            // Else someone else beat us to it so look again
         }
  
         // Clean out any dead references to keep our map from growing and growing
-        Reference toRemove;
-        while( (toRemove = refs.poll()) != null ) {
-            map.values().remove(toRemove);
-        }                    
-    
-        return result.get();
-    } 
+        purge();
+        evictToSize(id);
+ 
+        return created;
+    }
+ 
+    /**
+     *  Removes the entries for buffers that have been garbage collected.
+     */   
+    public void purge() {
+        BufferRef ref;
+        while( (ref = (BufferRef)refs.poll()) != null ) {
+            // Only if it hasn't already been replaced
+            if( map.remove(ref.id, ref) ) {
+                collected.increment();
+            }
+        }
+    }
+ 
+    /**
+     *  Evicts entries until the map is within the maximum size.  The hand
+     *  removes entries whose buffers have already been collected and 
+     *  entries that haven't been looked up since it last passed them, and
+     *  clears the flag on the rest.  The entry for 'keep' is never evicted.
+     *  Every entry is cleared within one sweep so a miss at capacity only
+     *  has to visit a few entries unless most of the cache is in active use.
+     */
+    private synchronized void evictToSize( EntityId keep ) {
+        int max = maxSize;
+        
+        // Two sweeps are always enough, this just keeps a map that others
+        // are filling at the same time from holding us here forever
+        int steps = map.size() * 2 + 1;
+        while( max > 0 && map.size() > max && steps-- > 0 ) {
+            if( hand == null || !hand.hasNext() ) {
+                hand = map.values().iterator();
+                if( !hand.hasNext() ) {
+                    break;
+                }
+            }
+            BufferRef ref = hand.next();
+            if( ref.get() == null ) {
+                // Collected but not enqueued yet
+                if( map.remove(ref.id, ref) ) {
+                    collected.increment();
+                }
+                continue;
+            }
+            if( ref.id.equals(keep) ) {
+                continue;
+            }
+            if( ref.referenced ) {
+                ref.referenced = false;
+                continue;
+            }
+            if( map.remove(ref.id, ref) ) {
+                evictions.increment();
+            }
+        }
+    }
+ 
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() 
+                + ", collected=" + getCollectedCount() + "]";
+    }
+ 
+    /**
+     *  A weak reference to a buffer that remembers its key so that it
+     *  can be removed from the map once it has been collected.
+     */
+    private static class BufferRef extends WeakReference<TransitionBuffer<PositionTransition>> {
+        final EntityId id;
+        
+        // Set by lookups and cleared by the eviction hand
+        volatile boolean referenced;
+        
+        public BufferRef( EntityId id, TransitionBuffer<PositionTransition> buffer,
+                          ReferenceQueue<TransitionBuffer<PositionTransition>> refs ) {
+            super(buffer, refs);
+            this.id = id;
+        }
+    }
 }
@@ -229,6 +229,7 @@ public class PlayerMovementState extends BaseAppState
         lastSpeedTime = time;
     }
 
+    private int moveSequence = 0;
     private long nextSendTime = 0;
     private long sendFrequency = 1000000000L / 20; // 20 times a second, every 50 ms
      
@@ -252,7 +253,7 @@ public class PlayerMovementState extends BaseAppState
             thrust.y = (float)(elevation * speed); 
             thrust.z = (float)(forward * speed);
             
-            session.move(rot, thrust);
+            session.move(++moveSequence, rot, thrust);
  
             // Only update the position/speed display 20 times a second
             //if( spatial != null ) {                
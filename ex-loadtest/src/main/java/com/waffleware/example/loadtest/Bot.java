@@ -0,0 +1,298 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.loadtest;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.network.Client;
+import com.jme3.network.ClientStateListener;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.service.AbstractClientService;
+import com.jme3.network.service.ClientServiceManager;
+import com.simsilica.ethereal.EtherealClient;
+import com.simsilica.ethereal.SharedObject;
+import com.simsilica.ethereal.SharedObjectListener;
+import com.simsilica.ethereal.TimeSource;
+import com.waffleware.example.client.GameClient;
+import com.waffleware.example.client.services.AccountClientService;
+import com.waffleware.example.client.services.ConnectionReadyListener;
+import com.waffleware.example.client.services.GameSessionClientService;
+import com.waffleware.example.client.services.HandshakeClientService;
+import com.waffleware.example.logic.stats.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  One headless player.  A bot connects with the regular GameClient
+ *  service stack, logs in, and then sends scripted movement whenever it 
+ *  is ticked.  While connected it keeps track of roughly how many bytes 
+ *  it has received and how old each SimEthereal frame is when it arrives.
+ *
+ *  Received bytes are estimated by reserializing each message, plus the
+ *  2 byte SpiderMonkey length header.  Transport headers are not included.
+ *  Frame age is the estimated server time when the frame started arriving
+ *  minus the frame's time stamp, so it is only as good as the time
+ *  source's drift estimate.
+ *
+ *  @author    Paul Speed
+ */
+public class Bot {
+
+    static Logger log = LoggerFactory.getLogger(Bot.class);
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final FlightPattern pattern;
+    private final double phase;
+    private final float speed;
+    private final Executor blockingExecutor;
+    
+    private GameClient client;
+    private GameSessionClientService session;
+    private TimeSource timeSource;
+    
+    private volatile boolean connected;
+    private volatile boolean loggedIn;
+    private volatile boolean closed;
+    private int moveSequence;
+    
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final Histogram latency = new Histogram();
+    
+    public Bot( String name, String host, int port, FlightPattern pattern, double phase, float speed,
+                Executor blockingExecutor ) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.pattern = pattern;
+        this.phase = phase;
+        this.speed = speed;
+        this.blockingExecutor = blockingExecutor;
+    }
+    
+    public String getName() {
+        return name;
+    }
+ 
+    /**
+     *  Connects to the server.  Login happens on the blocking executor once
+     *  the connection is fully set up.
+     */   
+    public void connect() throws IOException {
+        client = new GameClient(host, port);
+        ConnectionObserver observer = new ConnectionObserver();
+        client.getClient().addClientStateListener(observer);
+        client.getService(HandshakeClientService.class).addConnectionReadyListener(observer);
+        client.getClient().addMessageListener(new ByteCounter());
+        client.addService(new FrameObserver());
+        client.start();
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+ 
+    /**
+     *  Sends the movement for the specified time in seconds since the test
+     *  started.  Does nothing until the bot is logged in.
+     */   
+    public void tick( double time ) {
+        if( !loggedIn || closed ) {
+            return;
+        }
+        // The RMI layer serializes on send but new objects keep us from
+        // depending on that
+        Quaternion rot = new Quaternion();
+        Vector3f thrust = new Vector3f();
+        pattern.update(time, phase, speed, rot, thrust);
+        try {
+            session.move(++moveSequence, rot, thrust);
+        } catch( RuntimeException e ) {
+            log.warn(name + " error sending move", e);
+        }
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+    
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+ 
+    /**
+     *  Moves the frame latencies in nanoseconds recorded since the last
+     *  call into the specified histogram.
+     */   
+    public void drainLatency( Histogram target ) {
+        synchronized( latency ) {
+            target.add(latency);
+            latency.reset();
+        }
+    }
+    
+    public void close() {
+        closed = true;
+        loggedIn = false;
+        if( client != null ) {
+            client.close();
+        }
+    }
+ 
+    protected void login() {
+        try {
+            AccountClientService account = client.getService(AccountClientService.class);
+            account.addAccountSessionListener(this::onLoginStatus);
+            account.login(name);
+        } catch( RuntimeException e ) {
+            log.error(name + " error logging in", e);
+        }
+    }
+ 
+    protected void onLoginStatus( boolean loggedIn ) {
+        if( !loggedIn ) {
+            log.warn(name + " login refused");
+            return;
+        }
+        this.session = client.getService(GameSessionClientService.class);
+        this.loggedIn = true;
+        log.debug(name + " logged in");
+    }
+ 
+    private class ConnectionObserver implements ClientStateListener, ConnectionReadyListener {
+        @Override
+        public void clientConnected( Client c ) {
+            connected = true;
+        }
+        
+        @Override
+        public void connectionReady( Client c ) {
+            // Login is a synchronous RMI call and can't be made from the
+            // networking thread that is notifying us
+            blockingExecutor.execute(Bot.this::login);
+        }
+ 
+        @Override
+        public void clientDisconnected( Client c, DisconnectInfo info ) {
+            connected = false;
+            loggedIn = false;
+            if( !closed ) {
+                log.warn(name + " disconnected:" + info);
+            }
+        }
+    }
+ 
+    private class ByteCounter implements MessageListener<Client> {
+        private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+        
+        @Override
+        public void messageReceived( Client source, Message m ) {
+            messagesReceived.increment();
+            synchronized( buffer ) {
+                buffer.clear();
+                try {
+                    Serializer.writeClassAndObject(buffer, m);
+                    bytesReceived.add(buffer.position() + 2);
+                } catch( IOException | RuntimeException e ) {
+                    log.warn(name + " unable to size message:" + m, e);
+                }
+            }
+        }
+    }
+ 
+    /**
+     *  Times each SimEthereal frame as it arrives.
+     */
+    private class FrameObserver extends AbstractClientService
+                                implements SharedObjectListener {
+        @Override
+        protected void onInitialize( ClientServiceManager s ) {
+        }
+        
+        @Override
+        public void start() {
+            super.start();
+            EtherealClient ethereal = getService(EtherealClient.class);
+            timeSource = ethereal.getTimeSource();
+            ethereal.addObjectListener(this);
+        }
+        
+        @Override
+        public void stop() {
+            getService(EtherealClient.class).removeObjectListener(this);
+            super.stop();
+        }
+        
+        @Override
+        public void beginFrame( long time ) {
+            long serverNow = System.nanoTime() + timeSource.getDrift();
+            long age = serverNow - time;
+            if( age < 0 ) {
+                // Drift hasn't settled yet
+                return;
+            }
+            synchronized( latency ) {
+                latency.record(age);
+            }
+        }
+        
+        @Override
+        public void objectUpdated( SharedObject obj ) {
+        }
+        
+        @Override
+        public void objectRemoved( SharedObject obj ) {
+        }
+        
+        @Override
+        public void endFrame() {
+        }
+    }
+}
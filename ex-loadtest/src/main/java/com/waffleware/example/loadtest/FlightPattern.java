@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.loadtest;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ *  Scripted flight inputs for the load test bots.  Each pattern turns
+ *  a time in seconds into the same camera rotation and ship-space thrust
+ *  that PlayerMovementState sends.  The phase spreads bots out so that
+ *  they don't all fly in formation.
+ *
+ *  @author    Paul Speed
+ */
+public enum FlightPattern {
+
+    /**
+     *  Sits still, which mostly exercises the keyframe and idle paths.
+     */
+    IDLE {
+        @Override
+        public void update( double time, double phase, float speed, Quaternion rot, Vector3f thrust ) {
+            rot.fromAngles(0, (float)phase, 0);
+            thrust.set(0, 0, 0);
+        }
+    },
+    
+    /**
+     *  Flies forward while turning in a wide flat circle.
+     */
+    CIRCLE {
+        @Override
+        public void update( double time, double phase, float speed, Quaternion rot, Vector3f thrust ) {
+            rot.fromAngles(0, (float)(phase + time * 0.5), 0);
+            thrust.set(0, 0, speed);
+        }
+    },
+ 
+    /**
+     *  Flies forward while swinging back and forth and bobbing up and down.
+     */   
+    FIGURE_EIGHT {
+        @Override
+        public void update( double time, double phase, float speed, Quaternion rot, Vector3f thrust ) {
+            float yaw = (float)(phase + Math.sin(time * 0.4) * FastMath.PI);
+            float pitch = (float)(Math.sin(time * 0.8) * 0.3);
+            rot.fromAngles(pitch, yaw, 0);
+            thrust.set(0, 0, speed);
+        }
+    },
+ 
+    /**
+     *  Wanders around by mixing a few unrelated frequencies together and
+     *  thrusting along all of the axes.  The closest thing here to players 
+     *  dogfighting.
+     */   
+    WANDER {
+        @Override
+        public void update( double time, double phase, float speed, Quaternion rot, Vector3f thrust ) {
+            float yaw = (float)(phase + Math.sin(time * 0.31 + phase) * 2 + Math.sin(time * 0.13) * 3);
+            float pitch = (float)(Math.sin(time * 0.23 + phase) * 0.5);
+            rot.fromAngles(pitch, yaw, 0);
+            thrust.set((float)(Math.sin(time * 0.7 + phase) * speed * 0.5),
+                       (float)(Math.sin(time * 0.37) * speed * 0.25),
+                       (float)((0.5 + 0.5 * Math.sin(time * 0.11 + phase)) * speed));
+        }
+    };
+ 
+    /**
+     *  Fills in the rotation and thrust for the specified time.
+     */   
+    public abstract void update( double time, double phase, float speed, Quaternion rot, Vector3f thrust );
+}
@@ -0,0 +1,303 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.loadtest;
+
+import com.waffleware.example.common.remote.GameConstants;
+import com.waffleware.example.logic.stats.Histogram;
+import com.waffleware.example.server.GameServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Puts a swarm of headless bots on a local game server and reports
+ *  what it costs: server tick time from the server's metrics endpoint, 
+ *  plus the frame latency and received bytes that the bots see.  Bots 
+ *  send movement at 20 Hz just like the real client.
+ *
+ *  Options, all in --name=value form:
+ *  <ul>
+ *  <li>bots: the number of bots, default 10</li>
+ *  <li>duration: how long to run in seconds, default 60</li>
+ *  <li>pattern: idle, circle, figure_eight, wander, or mixed (the default)</li>
+ *  <li>speed: the thrust to fly with, default 10</li>
+ *  <li>host and port: the server, default 127.0.0.1 and the default game port</li>
+ *  <li>metricsPort: the server's metrics port, default GameServer.DEFAULT_METRICS_PORT</li>
+ *  <li>report: seconds between reports, default 5</li>
+ *  <li>ramp: milliseconds between bot connections, default 100</li>
+ *  <li>embedded: start a GameServer in this process instead of using a running one</li>
+ *  </ul>
+ *
+ *  Everything runs over loopback.  Non-loopback hosts are refused.
+ *
+ *  @author    Paul Speed
+ */
+public class LoadTest {
+
+    static Logger log = LoggerFactory.getLogger(LoadTest.class);
+ 
+    private static final long MOVE_INTERVAL = 50; // ms, ie: 20 Hz
+ 
+    private String host = "127.0.0.1";
+    private int port = GameConstants.DEFAULT_PORT;
+    private int metricsPort = GameServer.DEFAULT_METRICS_PORT;
+    private int botCount = 10;
+    private int duration = 60;
+    private int reportInterval = 5;
+    private int ramp = 100;
+    private float speed = 10;
+    private FlightPattern pattern;
+    private boolean embedded;
+    
+    private List<Bot> bots = new ArrayList<>();
+    private long[] lastBytes;
+    private long[] lastMessages;
+    private Histogram latency = new Histogram();
+    private Histogram totalLatency = new Histogram();
+    private long startTime;
+    private long lastReportTime;
+    
+    public LoadTest() {
+    }
+ 
+    public void parseArgs( String... args ) {
+        for( String arg : args ) {
+            if( !arg.startsWith("--") ) {
+                throw new IllegalArgumentException("Unknown argument:" + arg);
+            }
+            int split = arg.indexOf('=');
+            String name = split < 0 ? arg.substring(2) : arg.substring(2, split);
+            String value = split < 0 ? "true" : arg.substring(split + 1);
+            switch( name ) {
+                case "bots":
+                    botCount = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    duration = Integer.parseInt(value);
+                    break;
+                case "pattern":
+                    pattern = "mixed".equalsIgnoreCase(value) ? null : FlightPattern.valueOf(value.toUpperCase());
+                    break;
+                case "speed":
+                    speed = Float.parseFloat(value);
+                    break;
+                case "host":
+                    host = value;
+                    break;
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "metricsPort":
+                    metricsPort = Integer.parseInt(value);
+                    break;
+                case "report":
+                    reportInterval = Integer.parseInt(value);
+                    break;
+                case "ramp":
+                    ramp = Integer.parseInt(value);
+                    break;
+                case "embedded":
+                    embedded = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option:" + name);
+            }
+        }
+    }
+ 
+    public void run() throws Exception {
+        if( !InetAddress.getByName(host).isLoopbackAddress() ) {
+            throw new IllegalArgumentException("Load tests only run over loopback, host:" + host);
+        }
+        
+        GameServer server = null;
+        if( embedded ) {
+            System.setProperty("metrics.port", String.valueOf(metricsPort));
+            server = new GameServer(port, "Load test server");
+            server.start();
+        }
+        
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("BotTicker"));
+        ExecutorService blocking = Executors.newCachedThreadPool(daemonThreads("BotLogin"));
+        MetricsScraper scraper = new MetricsScraper(metricsPort);
+        try {
+            log.info("Starting " + botCount + " bots against " + host + ":" + port);
+            FlightPattern[] patterns = FlightPattern.values();
+            for( int i = 0; i < botCount; i++ ) {
+                FlightPattern p = pattern != null ? pattern : patterns[i % patterns.length];
+                double phase = i * 2.0 * Math.PI / botCount;
+                bots.add(new Bot("bot-" + i, host, port, p, phase, speed, blocking));
+            }
+            lastBytes = new long[botCount];
+            lastMessages = new long[botCount];
+ 
+            startTime = System.nanoTime();
+            lastReportTime = startTime;
+            ticker.scheduleAtFixedRate(this::tickBots, 0, MOVE_INTERVAL, TimeUnit.MILLISECONDS);
+            
+            for( Bot bot : bots ) {
+                try {
+                    bot.connect();
+                } catch( IOException e ) {
+                    log.error(bot.getName() + " failed to connect", e);
+                }
+                Thread.sleep(ramp);
+            }
+            
+            long end = startTime + TimeUnit.SECONDS.toNanos(duration);
+            while( System.nanoTime() < end ) {
+                Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(reportInterval), 
+                                      Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+                report(scraper.scrape());
+            }
+            
+            log.info("Totals for " + duration + " s: frame age p50:" + ms(totalLatency.getPercentile(50))
+                     + " p99:" + ms(totalLatency.getPercentile(99)) 
+                     + " max:" + ms(totalLatency.getMax())
+                     + "  received per bot:" + kb(averageBytes()) + " KB");
+        } finally {
+            ticker.shutdownNow();
+            for( Bot bot : bots ) {
+                bot.close();
+            }
+            blocking.shutdownNow();
+            if( server != null ) {
+                server.close();
+            }
+        }
+    }
+ 
+    protected void tickBots() {
+        double time = (System.nanoTime() - startTime) / 1000000000.0;
+        for( Bot bot : bots ) {
+            bot.tick(time);
+        }
+    }
+ 
+    protected void report( Map<String, Double> metrics ) {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportTime) / 1000000000.0;
+        lastReportTime = now;
+        
+        int connected = 0;
+        int inGame = 0;
+        double totalRate = 0;
+        double maxRate = 0;
+        double totalMessages = 0;
+        latency.reset();
+        for( int i = 0; i < bots.size(); i++ ) {
+            Bot bot = bots.get(i);
+            if( bot.isConnected() ) {
+                connected++;
+            }
+            if( bot.isLoggedIn() ) {
+                inGame++;
+            }
+            long bytes = bot.getBytesReceived();
+            long messages = bot.getMessagesReceived();
+            double rate = (bytes - lastBytes[i]) / seconds;
+            totalRate += rate;
+            maxRate = Math.max(maxRate, rate);
+            totalMessages += (messages - lastMessages[i]) / seconds;
+            lastBytes[i] = bytes;
+            lastMessages[i] = messages;
+            bot.drainLatency(latency);
+        }
+        totalLatency.add(latency);
+        int n = Math.max(1, bots.size());
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[%4ds] bots:%d/%d/%d", 
+                                TimeUnit.NANOSECONDS.toSeconds(now - startTime),
+                                inGame, connected, bots.size()));
+        if( metrics.containsKey("tick_time_p50") ) {
+            sb.append(String.format(" | server tick p50:%.2f p99:%.2f max:%.2f ms",
+                                    metrics.get("tick_time_p50"), 
+                                    metrics.get("tick_time_p99"),
+                                    metrics.get("tick_time_max")));
+        } else {
+            sb.append(" | server tick: no metrics");
+        }
+        sb.append(String.format(" | frame age p50:%.1f p99:%.1f ms", 
+                                ms(latency.getPercentile(50)), ms(latency.getPercentile(99))));
+        sb.append(String.format(" | recv/bot avg:%.1f max:%.1f KB/s %.0f msg/s",
+                                kb(totalRate / n), kb(maxRate), totalMessages / n));
+        log.info(sb.toString());
+    }
+ 
+    private double averageBytes() {
+        long total = 0;
+        for( Bot bot : bots ) {
+            total += bot.getBytesReceived();
+        }
+        return (double)total / Math.max(1, bots.size());
+    }
+ 
+    private static double ms( long nanos ) {
+        return nanos / 1000000.0;
+    }
+    
+    private static double kb( double bytes ) {
+        return bytes / 1024.0;
+    }
+ 
+    private static ThreadFactory daemonThreads( String name ) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+    
+    public static void main( String... args ) throws Exception {
+        LoadTest test = new LoadTest();
+        test.parseArgs(args);
+        test.run();
+    }
+}
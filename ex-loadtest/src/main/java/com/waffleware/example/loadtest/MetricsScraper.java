@@ -0,0 +1,92 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *  Reads the server's text metrics endpoint so that the load test can
+ *  report server-side numbers like tick time next to what the bots see.
+ *
+ *  @author    Paul Speed
+ */
+public class MetricsScraper {
+
+    private final URL url;
+    
+    public MetricsScraper( int port ) throws IOException {
+        this.url = new URL("http://127.0.0.1:" + port + "/metrics");
+    }
+ 
+    /**
+     *  Returns the current metrics by name, or an empty map if the endpoint
+     *  could not be read.
+     */   
+    public Map<String, Double> scrape() {
+        Map<String, Double> result = new HashMap<>();
+        try {
+            HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+            conn.setConnectTimeout(1000);
+            conn.setReadTimeout(1000);
+            try( BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), 
+                                                                              StandardCharsets.UTF_8)) ) {
+                String line;
+                while( (line = in.readLine()) != null ) {
+                    int split = line.lastIndexOf(' ');
+                    if( split < 0 ) {
+                        continue;
+                    }
+                    try {
+                        result.put(line.substring(0, split), Double.parseDouble(line.substring(split + 1)));
+                    } catch( NumberFormatException e ) {
+                        // Skip it
+                    }
+                }
+            }
+        } catch( IOException e ) {
+            // Just means no server metrics this time
+        }
+        return result;
+    }
+}
@@ -49,48 +49,189 @@ import com.waffleware.example.entity.data.Position;
  *  or velocity (at least not yet and there won't ever be in the true
  *  physics sense).  Rotation is kept because it's convenient.
  *
+ *  The integrated state (position, velocity, acceleration, mass, and
+ *  radius) lives in the packed arrays of a BodyStore and this object is
+ *  just a view onto its slot.  Use the accessors rather than caching
+ *  the slot since slots can move when other bodies are removed.
+ *
+ *  Body objects are recycled by their BodyStore once they have been
+ *  removed and every physics listener has seen the removal.  Code that 
+ *  holds onto a body beyond that should remember its generation and check 
+ *  it with isValid() since the same object may since have been reused for
+ *  some other entity.
+ *
  *  @author    Paul Speed
  */
 public class Body {
 
-    public final EntityId bodyId;
-    
-    public Vec3d  pos          = new Vec3d();
-    public Vec3d  velocity     = new Vec3d();
-    public Vec3d  acceleration = new Vec3d();
-    public double radius       = 1;
-    public double invMass      = 1;
-    public AaBBox bounds       = new AaBBox(radius);
+    // Only reassigned when the body is recycled
+    private EntityId bodyId;
     
     public Quatd orientation = new Quatd();
     public volatile ControlDriver driver;
+    
+    BodyStore store;
+    int slot;
+    int generation;
+    
+    private AaBBox bounds;
+    private double boundsRadius;
+    private Vec3d center = new Vec3d();
  
-    public Body( EntityId bodyId ) {
-        this.bodyId = bodyId;
+    Body( EntityId bodyId, double radius ) {
+        reset(bodyId, radius);
     }
-    
-    public Body( EntityId bodyId, double x, double y, double z ) {
+ 
+    /**
+     *  Prepares a new or recycled body to represent the specified entity.
+     */
+    void reset( EntityId bodyId, double radius ) {
         this.bodyId = bodyId;
-        pos.set(x, y, z);
+        this.orientation.set(0, 0, 0, 1);
+        this.driver = null;
+        if( bounds == null || boundsRadius != radius ) {
+            this.bounds = new AaBBox(radius);
+            this.boundsRadius = radius;
+        }
+    }
+ 
+    /**
+     *  Returns the entity that this body currently represents.
+     */
+    public EntityId getBodyId() {
+        return bodyId;
+    }
+ 
+    /**
+     *  Returns the current slot of this body in its BodyStore.
+     */
+    public int getSlot() {
+        return slot;
+    }
+ 
+    /**
+     *  Returns how many times this Body object has been released back
+     *  to its store's pool.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+ 
+    /**
+     *  Returns true if this body is still in a store and has not been 
+     *  recycled since the specified generation was read from it.
+     */
+    public boolean isValid( int generation ) {
+        return store != null && this.generation == generation;
     }
     
     public void setPosition( Position pos ) {
-        this.pos.set(pos.getLocation());
+        Vec3d loc = pos.getLocation();
+        setPosition(loc.x, loc.y, loc.z);
         this.orientation.set(pos.getFacing());
     }
  
+    public void setPosition( double x, double y, double z ) {
+        int i = slot * 3;
+        store.pos[i] = x;
+        store.pos[i + 1] = y;
+        store.pos[i + 2] = z;
+    }
+    
+    public Vec3d getPosition( Vec3d result ) {
+        int i = slot * 3;
+        return result.set(store.pos[i], store.pos[i + 1], store.pos[i + 2]);
+    }
+ 
+    /**
+     *  Returns the position interpolated between the last two fixed steps
+     *  by the physics system's interpolation alpha.
+     *  See BodyStore.getInterpolatedPosition().
+     */
+    public Vec3d getInterpolatedPosition( double alpha, Vec3d result ) {
+        return store.getInterpolatedPosition(slot, alpha, result);
+    }
+ 
+    /**
+     *  Returns the orientation interpolated between the last two fixed steps
+     *  by the physics system's interpolation alpha.
+     *  See BodyStore.getInterpolatedOrientation().
+     */
+    public Quatd getInterpolatedOrientation( double alpha, Quatd result ) {
+        return store.getInterpolatedOrientation(slot, alpha, result);
+    }
+ 
+    public void setVelocity( Vec3d v ) {
+        setVelocity(v.x, v.y, v.z);
+    }
+    
+    public void setVelocity( double x, double y, double z ) {
+        int i = slot * 3;
+        store.vel[i] = x;
+        store.vel[i + 1] = y;
+        store.vel[i + 2] = z;
+    }
+    
+    public Vec3d getVelocity( Vec3d result ) {
+        int i = slot * 3;
+        return result.set(store.vel[i], store.vel[i + 1], store.vel[i + 2]);
+    }
+ 
+    public void setAcceleration( double x, double y, double z ) {
+        int i = slot * 3;
+        store.acc[i] = x;
+        store.acc[i + 1] = y;
+        store.acc[i + 2] = z;
+    }
+ 
+    public void addAcceleration( double x, double y, double z ) {
+        int i = slot * 3;
+        store.acc[i] += x;
+        store.acc[i + 1] += y;
+        store.acc[i + 2] += z;
+    }
+    
+    public Vec3d getAcceleration( Vec3d result ) {
+        int i = slot * 3;
+        return result.set(store.acc[i], store.acc[i + 1], store.acc[i + 2]);
+    }
+    
+    /**
+     *  Returns true if this body moved or rotated more than the physics
+     *  system's epsilons during the last frame.  Always false once the
+     *  body has been released.
+     */
+    public boolean isChanged() {
+        if( store == null ) {
+            return false;
+        }
+        return store.changed[slot];
+    }
+    
+    public double getRadius() {
+        return store.radius[slot];
+    }
+    
+    public double getInverseMass() {
+        return store.invMass[slot];
+    }
+ 
+    /**
+     *  Returns the world bounds of this body centered on its current
+     *  position.
+     */   
+    public AaBBox getBounds() {
+        bounds.setCenter(getPosition(center));
+        return bounds;
+    }
+ 
     public void integrate( double stepTime ) {
-        // Integrate velocity
-        velocity.addScaledVectorLocal(acceleration, stepTime);
-        
-        // Integrate position
-        pos.addScaledVectorLocal(velocity, stepTime);
+        store.integrate(stepTime, slot, slot + 1);
+    }
  
-//System.out.println(bodyId + " pos:" + pos + "   dir:" + orientation.mult(new Vec3d(0, 0, 1)));        
-        // That's it.  That's a physics engine.
-        
-        // Update the bounds since it's easy to do here and helps
-        // other things know where the object is for real
-        bounds.setCenter(pos);   
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + bodyId + ", slot=" + slot 
+                + ", generation=" + generation + "]";
     }
 }
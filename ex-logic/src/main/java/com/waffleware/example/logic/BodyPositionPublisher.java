@@ -37,9 +37,11 @@
 package com.waffleware.example.logic;
 
 import com.simsilica.es.EntityData;
+import com.simsilica.mathd.Vec3d;
 import com.simsilica.sim.AbstractGameSystem;
 import com.simsilica.sim.SimTime;
 import com.waffleware.example.entity.data.BodyPosition;
+import com.waffleware.example.logic.utils.EntityIndex;
 
 /**
  *  Publishes to a BodyPosition component so that server-side systems
@@ -54,6 +56,14 @@ import com.waffleware.example.entity.data.BodyPosition;
  *  to add its object update events from the network.  The BodyPosition
  *  component itself is actually transferred empty.
  *
+ *  Nothing on the server reads the recorded frames by default so recording
+ *  is off and the components are only attached for the clients.  A system
+ *  that wants to read positions through BodyPosition.getFrames() turns it
+ *  on with setRecording().  Frames are then recorded with the primitive 
+ *  BodyPosition.addFrame() and the component for each body is kept on hand 
+ *  rather than looked up every time so that steady-state publishing doesn't 
+ *  create garbage.
+ *
  *  @author    Paul Speed
  */
 public class BodyPositionPublisher extends AbstractGameSystem
@@ -61,21 +71,73 @@ public class BodyPositionPublisher extends AbstractGameSystem
 {
  
     private EntityData ed;
+    private SimplePhysics physics;
     private SimTime    time;
+    private Vec3d      pos = new Vec3d();
+    
+    // The BodyPosition we set on each body's entity
+    private EntityIndex<BodyPosition> positions = new EntityIndex<>();
+    
+    private final int history;
+    private boolean recording;
+    
+    public BodyPositionPublisher() {
+        this(3); 
+    }
+ 
+    /**
+     *  Creates a publisher whose BodyPositions keep the specified number
+     *  of frames.  Only increase this if something needs to look further
+     *  back at individual bodies.  Rewinding the whole world for things like
+     *  shot resolution is better done with the RewindSystem.
+     */   
+    public BodyPositionPublisher( int history ) {
+        this.history = history;
+    }
+    
+    public int getHistory() {
+        return history;
+    }
+ 
+    /**
+     *  Sets whether body frames are recorded into the BodyPosition components.
+     *  Defaults to false.  This is not a thread safe method call so must be 
+     *  called during setup or from the simulation thread.
+     */   
+    public void setRecording( boolean recording ) {
+        if( this.recording == recording ) {
+            return;
+        }
+        this.recording = recording;
+        if( recording && time != null ) {
+            // Bodies at rest aren't published again until they move so
+            // catch all of them up now
+            BodyStore store = physics.getBodyStore();
+            Body[] array = store.getArray();
+            for( int i = 0; i < store.size(); i++ ) {
+                publish(time.getTime(), array[i], true);
+            }
+        }
+    }
     
-    public BodyPositionPublisher() { 
+    public boolean isRecording() {
+        return recording;
     }
  
     @Override
     protected void initialize() {
         this.ed = getSystem(EntityData.class);
+        this.physics = getSystem(SimplePhysics.class);
         
-        getSystem(SimplePhysics.class).addPhysicsListener(this);
+        // We only need to record frames for bodies that actually moved.  
+        // PositionFrames.getFrame() clamps to the newest frame so bodies
+        // that are sitting still keep reporting where they stopped.
+        physics.addPhysicsListener(this, true);
     }
 
     @Override
     protected void terminate() {
-        getSystem(SimplePhysics.class).removePhysicsListener(this);
+        physics.removePhysicsListener(this);
     }
    
     @Override
@@ -86,27 +148,66 @@ public class BodyPositionPublisher extends AbstractGameSystem
     @Override
     public void addBody( Body body ) {
     
-        // The server side needs hardly any backlog.  We'll use 3 just in case
-        // but 2 (even possibly 1) should be fine.  If we ever need to rewind
-        // for shot resolution then we can increase the backlog as necessary
-        BodyPosition bPos = new BodyPosition(3);
+        // The server side needs hardly any backlog.  The default is 3 just in 
+        // case but 2 (even possibly 1) should be fine.  Spatial rewinding is
+        // handled by the RewindSystem's snapshots instead.
+        // Only the primitive frames are recorded on the server so there
+        // is no TransitionBuffer to allocate.
+        BodyPosition bPos = BodyPosition.createFrameRecorder(history);
         
         // Note: we could have also initialized the body position here but
         // we've already done it in SimplePhysics's EntityContainer.
-        ed.setComponent(body.bodyId, bPos);
+        ed.setComponent(body.getBodyId(), bPos);
+        positions.put(body.getBodyId(), bPos);
+    }
+ 
+    protected BodyPosition getBodyPosition( Body body ) {
+        BodyPosition result = positions.get(body.getBodyId());
+        if( result == null ) {
+            // Must have been added before we were listening
+            result = ed.getComponent(body.getBodyId(), BodyPosition.class);
+            if( result != null ) {
+                positions.put(body.getBodyId(), result);
+            }
+        }
+        return result;
+    }
+ 
+    protected void publish( long frameTime, Body body, boolean visible ) {
+        BodyPosition bPos = getBodyPosition(body);
+        if( bPos == null ) {
+            return;
+        }
+        Vec3d loc = body.getPosition(this.pos);
+        bPos.addFrame(frameTime, loc.x, loc.y, loc.z, body.orientation, visible);
     }
     
     @Override
     public void updateBody( Body body ) {
-        BodyPosition pos = ed.getComponent(body.bodyId, BodyPosition.class);
-        pos.addFrame(time.getTime(), body.pos.toVector3f(), body.orientation.toQuaternion(), true);
+        if( !recording ) {
+            return;
+        }
+        publish(time.getTime(), body, true);
+    }
+ 
+    @Override
+    public void updateBodies( Body[] bodies, int count ) {
+        if( !recording ) {
+            return;
+        }
+        long frameTime = time.getTime();
+        for( int i = 0; i < count; i++ ) {
+            publish(frameTime, bodies[i], true);
+        }
     }
  
     @Override
     public void removeBody( Body body ) {
         // Give one last position update with the visibility shut off
-        BodyPosition pos = ed.getComponent(body.bodyId, BodyPosition.class);
-        pos.addFrame(time.getTime(), body.pos.toVector3f(), body.orientation.toQuaternion(), false);
+        if( recording ) {
+            publish(time.getTime(), body, false);
+        }
+        positions.remove(body.getBodyId());
     }
 
     @Override
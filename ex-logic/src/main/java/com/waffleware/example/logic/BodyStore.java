@@ -0,0 +1,443 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic;
+
+import com.simsilica.es.EntityId;
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+
+import java.util.Arrays;
+
+/**
+ *  Packed structure-of-arrays storage for the integrated state of
+ *  all bodies.  Position, velocity, and acceleration are kept as interleaved
+ *  x, y, z triplets in flat double arrays and inverse mass and radius
+ *  are kept in their own arrays, all indexed by the body's slot.  Slots
+ *  are always dense from 0 to size()-1 so that the integration pass
+ *  runs over contiguous memory instead of chasing Vec3d references
+ *  across the heap.
+ *
+ *  Body objects are just views onto a slot.  Removing a body moves
+ *  the last body into the freed slot so slot IDs are only stable
+ *  until the next remove.  Removed Body objects are kept in a pool
+ *  and handed out again by create() so that steady create/remove churn
+ *  doesn't allocate.
+ *
+ *  When the physics runs with a fixed step, the position and orientation
+ *  from before the last step are also kept so that the state can be
+ *  interpolated to the time between steps.
+ *
+ *  This is not thread safe and is expected to be modified only from
+ *  the physics/simulation thread.
+ *
+ *  @author    Paul Speed
+ */
+public class BodyStore {
+
+    private int size;
+    private Body[] bodies;
+    
+    double[] pos;
+    double[] vel;
+    double[] acc;
+    double[] invMass;
+    double[] radius;
+    
+    // The last published state of each body and whether it changed
+    // enough in the last frame to be published again.
+    double[] lastPos;
+    double[] lastRot;
+    boolean[] changed;
+    
+    // The state from before the last fixed step, NaN for bodies added 
+    // since then
+    double[] prevPos;
+    double[] prevRot;
+    
+    // Released bodies waiting to be reused
+    private Body[] pool = new Body[16];
+    private int poolSize;
+    private int maxPoolSize = 1024;
+ 
+    public BodyStore() {
+        this(64);
+    }
+    
+    public BodyStore( int initialCapacity ) {
+        initialCapacity = Math.max(1, initialCapacity);
+        this.bodies = new Body[initialCapacity];
+        this.pos = new double[initialCapacity * 3];
+        this.vel = new double[initialCapacity * 3];
+        this.acc = new double[initialCapacity * 3];
+        this.invMass = new double[initialCapacity];
+        this.radius = new double[initialCapacity];
+        this.lastPos = new double[initialCapacity * 3];
+        this.lastRot = new double[initialCapacity * 4];
+        this.changed = new boolean[initialCapacity];
+        this.prevPos = new double[initialCapacity * 3];
+        this.prevRot = new double[initialCapacity * 4];
+    }
+ 
+    /**
+     *  Returns the number of bodies currently in the store.
+     */   
+    public int size() {
+        return size;
+    }
+ 
+    /**
+     *  Returns the internal dense body array.  Only the first size() 
+     *  elements are valid and the array may be replaced when the store
+     *  grows so callers should not hold onto it across frames.
+     */   
+    public Body[] getArray() {
+        return bodies;
+    }
+    
+    public Body getBody( int slot ) {
+        return bodies[slot];
+    }
+
+    /**
+     *  Returns the packed x, y, z positions, three per slot.  This is the 
+     *  live internal array, valid up to size() * 3 and only until the next
+     *  add(), and should be treated as read-only outside of the physics 
+     *  system.
+     */
+    public double[] getPositionArray() {
+        return pos;
+    }
+ 
+    /**
+     *  Returns the packed x, y, z velocities, three per slot.  Same caveats
+     *  as getPositionArray().
+     */
+    public double[] getVelocityArray() {
+        return vel;
+    }
+ 
+    /**
+     *  Returns the packed x, y, z accelerations, three per slot.  Unlike
+     *  the other arrays, systems that apply forces may add to this before
+     *  integration.
+     */
+    public double[] getAccelerationArray() {
+        return acc;
+    }
+    
+    public double[] getRadiusArray() {
+        return radius;
+    }
+    
+    public double[] getInverseMassArray() {
+        return invMass;
+    }
+ 
+    /**
+     *  Sets the maximum number of released bodies that will be kept around
+     *  for reuse.  Defaults to 1024.
+     */
+    public void setMaxPoolSize( int maxPoolSize ) {
+        this.maxPoolSize = Math.max(0, maxPoolSize);
+        while( poolSize > this.maxPoolSize ) {
+            pool[--poolSize] = null;
+        }
+    }
+    
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+ 
+    /**
+     *  Returns the number of released bodies currently waiting to be reused.
+     */   
+    public int getPoolSize() {
+        return poolSize;
+    }
+ 
+    /**
+     *  Creates a new body attached to the next free slot, reusing a
+     *  previously removed Body object when one is available.
+     */   
+    public Body create( EntityId bodyId, double invMass, double radius ) {
+        Body result;
+        if( poolSize > 0 ) {
+            result = pool[--poolSize];
+            pool[poolSize] = null;
+            result.reset(bodyId, radius);
+        } else {
+            result = new Body(bodyId, radius);
+        }
+        add(result, invMass, radius);
+        return result;
+    }
+    
+    protected void add( Body body, double invMass, double radius ) {
+        if( size == bodies.length ) {
+            grow(size * 2);
+        }
+        int slot = size++;
+        bodies[slot] = body;
+        body.store = this;
+        body.slot = slot;
+        
+        int i = slot * 3;
+        pos[i] = 0; pos[i + 1] = 0; pos[i + 2] = 0;
+        vel[i] = 0; vel[i + 1] = 0; vel[i + 2] = 0;
+        acc[i] = 0; acc[i + 1] = 0; acc[i + 2] = 0;
+        this.invMass[slot] = invMass;
+        this.radius[slot] = radius;
+        prevPos[i] = Double.NaN;
+        
+        // Make sure new bodies always look changed the first time around
+        forceChanged(slot);
+    }
+ 
+    /**
+     *  Resets the last published state of the specified slot so that
+     *  the next collectChanges() is guaranteed to include it.
+     */
+    public void forceChanged( int slot ) {
+        int i = slot * 3;
+        lastPos[i] = Double.POSITIVE_INFINITY;
+        lastPos[i + 1] = Double.POSITIVE_INFINITY;
+        lastPos[i + 2] = Double.POSITIVE_INFINITY;
+        changed[slot] = true;
+    }
+ 
+    /**
+     *  Removes the body from the store, moving the last body into its slot
+     *  to keep the arrays dense.  The removed body's generation is bumped
+     *  and it is released to the pool so it must not be used after this.
+     */   
+    protected void remove( Body body ) {
+        if( body.store != this ) {
+            return;
+        }
+        int slot = body.slot;
+        
+        int last = --size;
+        if( slot != last ) {
+            Body moved = bodies[last];
+            bodies[slot] = moved;
+            moved.slot = slot;
+            System.arraycopy(pos, last * 3, pos, slot * 3, 3);
+            System.arraycopy(vel, last * 3, vel, slot * 3, 3);
+            System.arraycopy(acc, last * 3, acc, slot * 3, 3);
+            invMass[slot] = invMass[last];
+            radius[slot] = radius[last];
+            System.arraycopy(lastPos, last * 3, lastPos, slot * 3, 3);
+            System.arraycopy(lastRot, last * 4, lastRot, slot * 4, 4);
+            changed[slot] = changed[last];
+            System.arraycopy(prevPos, last * 3, prevPos, slot * 3, 3);
+            System.arraycopy(prevRot, last * 4, prevRot, slot * 4, 4);
+        }
+        bodies[last] = null;
+        release(body);
+    }
+ 
+    private void release( Body body ) {
+        body.store = null;
+        body.slot = -1;
+        body.generation++;
+        body.driver = null;
+        if( poolSize >= maxPoolSize ) {
+            return;
+        }
+        if( poolSize == pool.length ) {
+            Body[] newPool = new Body[poolSize * 2];
+            System.arraycopy(pool, 0, newPool, 0, poolSize);
+            pool = newPool;
+        }
+        pool[poolSize++] = body;
+    }
+    
+    protected void grow( int capacity ) {
+        Body[] newBodies = new Body[capacity];
+        System.arraycopy(bodies, 0, newBodies, 0, size);
+        bodies = newBodies;
+        pos = copy(pos, capacity * 3);
+        vel = copy(vel, capacity * 3);
+        acc = copy(acc, capacity * 3);
+        invMass = copy(invMass, capacity);
+        radius = copy(radius, capacity);
+        lastPos = copy(lastPos, capacity * 3);
+        lastRot = copy(lastRot, capacity * 4);
+        boolean[] newChanged = new boolean[capacity];
+        System.arraycopy(changed, 0, newChanged, 0, size);
+        changed = newChanged;
+        prevPos = copy(prevPos, capacity * 3);
+        prevRot = copy(prevRot, capacity * 4);
+    }
+    
+    private double[] copy( double[] array, int length ) {
+        double[] result = new double[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+ 
+    /**
+     *  Zeroes the acceleration of the bodies in the slot range [start, end).
+     */   
+    public void clearAccelerations( int start, int end ) {
+        Arrays.fill(acc, start * 3, end * 3, 0.0);
+    }
+ 
+    /**
+     *  Integrates all of the bodies in the store.
+     */   
+    public void integrate( double stepTime ) {
+        integrate(stepTime, 0, size);
+    }
+ 
+    /**
+     *  Integrates the bodies in the slot range [start, end).  This is
+     *  the whole physics engine: velocity from acceleration and then
+     *  position from velocity.
+     */   
+    public void integrate( double stepTime, int start, int end ) {
+        double[] pos = this.pos;
+        double[] vel = this.vel;
+        double[] acc = this.acc;
+        for( int i = start * 3, last = end * 3; i < last; i++ ) {
+            vel[i] += acc[i] * stepTime;
+            pos[i] += vel[i] * stepTime;
+        }
+    }
+
+    /**
+     *  Copies the current position and orientation of every body as the
+     *  previous state for interpolation.  SimplePhysics calls this right 
+     *  before the last fixed step of a frame.
+     */   
+    public void savePreviousState() {
+        System.arraycopy(pos, 0, prevPos, 0, size * 3);
+        for( int slot = 0; slot < size; slot++ ) {
+            Quatd rot = bodies[slot].orientation;
+            int r = slot * 4;
+            prevRot[r] = rot.x;
+            prevRot[r + 1] = rot.y;
+            prevRot[r + 2] = rot.z;
+            prevRot[r + 3] = rot.w;
+        }
+    }
+ 
+    /**
+     *  Returns the position of the body in the specified slot interpolated
+     *  between its state before the last fixed step, at alpha 0, and its 
+     *  current state, at alpha 1.  Bodies added since the last step just 
+     *  return their current position.
+     */   
+    public Vec3d getInterpolatedPosition( int slot, double alpha, Vec3d result ) {
+        int i = slot * 3;
+        if( Double.isNaN(prevPos[i]) ) {
+            return result.set(pos[i], pos[i + 1], pos[i + 2]);
+        }
+        return result.set(prevPos[i] + (pos[i] - prevPos[i]) * alpha,
+                          prevPos[i + 1] + (pos[i + 1] - prevPos[i + 1]) * alpha,
+                          prevPos[i + 2] + (pos[i + 2] - prevPos[i + 2]) * alpha);
+    }
+ 
+    /**
+     *  Returns the orientation of the body in the specified slot interpolated
+     *  the same way as getInterpolatedPosition().  The steps are small so a 
+     *  normalized linear blend along the shorter arc is close enough.
+     */   
+    public Quatd getInterpolatedOrientation( int slot, double alpha, Quatd result ) {
+        Quatd rot = bodies[slot].orientation;
+        if( Double.isNaN(prevPos[slot * 3]) ) {
+            return result.set(rot.x, rot.y, rot.z, rot.w);
+        }
+        int r = slot * 4;
+        double px = prevRot[r];
+        double py = prevRot[r + 1];
+        double pz = prevRot[r + 2];
+        double pw = prevRot[r + 3];
+        
+        // q and -q are the same rotation so blend toward the closer one
+        double sign = px * rot.x + py * rot.y + pz * rot.z + pw * rot.w < 0 ? -1 : 1;
+        double x = px + (rot.x * sign - px) * alpha;
+        double y = py + (rot.y * sign - py) * alpha;
+        double z = pz + (rot.z * sign - pz) * alpha;
+        double w = pw + (rot.w * sign - pw) * alpha;
+        double len = Math.sqrt(x * x + y * y + z * z + w * w);
+        if( len == 0 ) {
+            return result.set(rot.x, rot.y, rot.z, rot.w);
+        }
+        return result.set(x / len, y / len, z / len, w / len);
+    }
+ 
+    /**
+     *  Compares each body's current position and orientation against
+     *  the last state that was collected and copies the bodies that moved
+     *  more than the specified epsilons into the 'changes' array, updating
+     *  their last state.  Comparisons are per-component.  Returns the
+     *  number of changed bodies.  The 'changes' array must be at least
+     *  size() long.
+     */
+    public int collectChanges( double posEpsilon, double rotEpsilon, Body[] changes ) {
+        double[] pos = this.pos;
+        double[] lastPos = this.lastPos;
+        double[] lastRot = this.lastRot;
+        int count = 0;
+        for( int slot = 0; slot < size; slot++ ) {
+            int i = slot * 3;
+            int r = slot * 4;
+            Quatd rot = bodies[slot].orientation;
+            boolean moved = Math.abs(pos[i] - lastPos[i]) > posEpsilon
+                         || Math.abs(pos[i + 1] - lastPos[i + 1]) > posEpsilon
+                         || Math.abs(pos[i + 2] - lastPos[i + 2]) > posEpsilon
+                         || Math.abs(rot.x - lastRot[r]) > rotEpsilon
+                         || Math.abs(rot.y - lastRot[r + 1]) > rotEpsilon
+                         || Math.abs(rot.z - lastRot[r + 2]) > rotEpsilon
+                         || Math.abs(rot.w - lastRot[r + 3]) > rotEpsilon;
+            changed[slot] = moved;
+            if( !moved ) {
+                continue;
+            }
+            lastPos[i] = pos[i];
+            lastPos[i + 1] = pos[i + 1];
+            lastPos[i + 2] = pos[i + 2];
+            lastRot[r] = rot.x;
+            lastRot[r + 1] = rot.y;
+            lastRot[r + 2] = rot.z;
+            lastRot[r + 3] = rot.w;
+            changes[count++] = bodies[slot];
+        }
+        return count;
+    }
+}
@@ -38,7 +38,10 @@ package com.waffleware.example.logic;
 
 
 /**
- *
+ *  Applies control input to a single body before it is integrated.
+ *  When SimplePhysics is running its parallel pass this may be called
+ *  from a pool thread so implementations should only modify the body
+ *  they are given and their own state.
  *
  *  @author    Paul Speed
  */
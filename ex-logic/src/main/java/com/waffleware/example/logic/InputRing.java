@@ -0,0 +1,157 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic;
+
+/**
+ *  A fixed size, lock-free, single-producer/single-consumer queue of 
+ *  movement input frames.  Each frame is a client sequence number, an 
+ *  orientation quaternion, and a thrust vector stored in primitive arrays 
+ *  so that neither side allocates.
+ *
+ *  Only one thread may offer() and only one thread may poll().  They
+ *  can be different threads.
+ *
+ *  @author    Paul Speed
+ */
+public class InputRing {
+
+    // Floats per frame: quat x, y, z, w, thrust x, y, z
+    private static final int STRIDE = 7;
+
+    private final int mask;
+    private final int[] sequences;
+    private final float[] frames;
+    
+    // Total frames ever written and read.  Only the producer writes head
+    // and only the consumer writes tail.
+    private volatile long head;
+    private volatile long tail;
+    
+    // Consumer side
+    private int lastSequence;
+ 
+    /**
+     *  Creates a ring that can hold at least the specified number of frames.
+     *  The capacity is rounded up to a power of two.
+     */   
+    public InputRing( int capacity ) {
+        int size = 2;
+        while( size < capacity ) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.sequences = new int[size];
+        this.frames = new float[size * STRIDE];
+    }
+ 
+    public int getCapacity() {
+        return mask + 1;
+    }
+ 
+    /**
+     *  Returns the number of frames waiting to be polled.
+     */   
+    public int size() {
+        return (int)(head - tail);
+    }
+ 
+    /**
+     *  Adds a frame to the ring.  Returns false if the ring is full, in 
+     *  which case the frame is dropped.  Producer thread only.
+     */   
+    public boolean offer( int sequence, float qx, float qy, float qz, float qw,
+                          float tx, float ty, float tz ) {
+        long h = head;
+        if( h - tail > mask ) {
+            return false;
+        }
+        int index = (int)h & mask;
+        int i = index * STRIDE;
+        sequences[index] = sequence;
+        frames[i] = qx;
+        frames[i + 1] = qy;
+        frames[i + 2] = qz;
+        frames[i + 3] = qw;
+        frames[i + 4] = tx;
+        frames[i + 5] = ty;
+        frames[i + 6] = tz;
+        
+        // Publish the frame
+        head = h + 1;
+        return true;
+    }
+ 
+    /**
+     *  Copies the oldest frame into 'frame' as quat x, y, z, w followed by 
+     *  thrust x, y, z and returns true, or returns false if the ring is empty.  
+     *  The frame's sequence number is available from getSequence() afterwards.
+     *  Consumer thread only.
+     */   
+    public boolean poll( float[] frame ) {
+        long t = tail;
+        if( t == head ) {
+            return false;
+        }
+        int index = (int)t & mask;
+        lastSequence = sequences[index];
+        System.arraycopy(frames, index * STRIDE, frame, 0, STRIDE);
+        
+        // Free the slot for the producer
+        tail = t + 1;
+        return true;
+    }
+ 
+    /**
+     *  Discards the oldest frame without reading it.  Returns false if the
+     *  ring was empty.  Consumer thread only.
+     */   
+    public boolean skip() {
+        long t = tail;
+        if( t == head ) {
+            return false;
+        }
+        tail = t + 1;
+        return true;
+    }
+ 
+    /**
+     *  Returns the sequence number of the frame last returned by poll().
+     */   
+    public int getSequence() {
+        return lastSequence;
+    }
+}
@@ -50,6 +50,20 @@ public interface PhysicsListener {
     public void addBody(Body body);
 
     public void updateBody(Body body);
+ 
+    /**
+     *  Called once per frame with all of the bodies that were updated.
+     *  Only the first 'count' elements of the array are valid and the
+     *  array itself should not be kept or modified.  The default 
+     *  implementation calls updateBody() for each body but listeners 
+     *  that care about throughput should override this to process the 
+     *  whole batch in one loop.
+     */
+    public default void updateBodies(Body[] bodies, int count) {
+        for( int i = 0; i < count; i++ ) {
+            updateBody(bodies[i]);
+        }
+    }
 
     public void removeBody(Body body);
 
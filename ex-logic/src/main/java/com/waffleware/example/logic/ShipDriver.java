@@ -46,24 +46,95 @@ import com.simsilica.mathd.Vec3d;
  *  physics acceleration for now and just set the velocity directly
  *  based on our accelerated thrust values.
  *
+ *  Movement input is queued in an InputRing and consumed in client
+ *  sequence order, one input per physics step, so inputs that arrive 
+ *  between steps aren't lost.  Inputs that arrive out of order are dropped 
+ *  and if the queue backs up the oldest inputs are skipped to catch up.
+ *  When no new input is waiting the last one stays in effect.
+ *
  *  @author    Paul Speed
  */
 public class ShipDriver
   implements ControlDriver {
  
-    // Keep track of what the player has provided.
-    private volatile Quaternion orientation = new Quaternion();
-    private volatile Vector3f   thrust      = new Vector3f();
+    private final InputRing inputs;
+    private int maxBacklog = 4;
+    
+    // The input currently in effect, only touched by the physics thread
+    private float[] frame = new float[] { 0, 0, 0, 1, 0, 0, 0 };
+    private float[] pending = new float[7];
+    private volatile int lastProcessedSequence;
+    private boolean hasSequence;
+    
+    // Stats, written by the producer and physics threads respectively
+    private volatile int droppedFull;
+    private volatile int droppedStale;
  
     private double pickup = 3;
     
     // The velocity in ship space, not world space    
     private Vec3d velocity = new Vec3d();
-
-    public void applyMovementState( Quaternion orientation, Vector3f thrust ) {
-        this.orientation = orientation;
-        this.thrust = thrust;
-    } 
+    
+    // Scratch space for the world velocity to avoid garbage
+    private Vec3d worldVelocity = new Vec3d();
+ 
+    public ShipDriver() {
+        this(32);
+    }
+    
+    public ShipDriver( int inputCapacity ) {
+        this.inputs = new InputRing(inputCapacity);
+    }
+ 
+    /**
+     *  Queues a movement input from the client.  Only one thread may call
+     *  this for any given driver, usually the networking thread delivering
+     *  the client's messages.  
+     */
+    public void applyMovementState( int sequence, Quaternion orientation, Vector3f thrust ) {
+        if( !inputs.offer(sequence, orientation.getX(), orientation.getY(), 
+                          orientation.getZ(), orientation.getW(),
+                          thrust.x, thrust.y, thrust.z) ) {
+            droppedFull++;
+        }
+    }
+ 
+    /**
+     *  Sets how many inputs may be waiting before the oldest are skipped.
+     *  Defaults to 4.
+     */   
+    public void setMaxBacklog( int maxBacklog ) {
+        this.maxBacklog = Math.max(1, maxBacklog);
+    }
+    
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+ 
+    /**
+     *  Returns the client sequence number of the last input that was
+     *  applied to the ship.  Clients can use this to reconcile their
+     *  predicted state.
+     */   
+    public int getLastProcessedSequence() {
+        return lastProcessedSequence;
+    }
+ 
+    /**
+     *  Returns the number of inputs that were dropped because the 
+     *  queue was full.
+     */   
+    public int getDroppedFullCount() {
+        return droppedFull;
+    }
+ 
+    /**
+     *  Returns the number of inputs that were dropped because they
+     *  arrived after a newer input.
+     */   
+    public int getDroppedStaleCount() {
+        return droppedStale;
+    }
  
     private double applyThrust( double v, double thrust, double tpf ) {
         if( thrust > 0 ) {
@@ -83,23 +154,46 @@ public class ShipDriver
         }
         return v;
     }
+ 
+    /**
+     *  Moves the next in-order input, if any, into the current frame.
+     */   
+    private void nextInput() {
+        // Skip ahead if we've fallen too far behind
+        for( int backlog = inputs.size(); backlog > maxBacklog; backlog-- ) {
+            inputs.skip();
+        }
+        while( inputs.poll(pending) ) {
+            int seq = inputs.getSequence();
+            if( hasSequence && seq - lastProcessedSequence <= 0 ) {
+                // Old news, the client has already sent something newer
+                droppedStale++;
+                continue;
+            }
+            hasSequence = true;
+            lastProcessedSequence = seq;
+            
+            float[] swap = frame;
+            frame = pending;
+            pending = swap;
+            return;
+        }
+    }
     
     @Override
     public void update( double stepTime, Body body ) {
  
-        // Grab local versions of the player settings in case another
-        // thread sets them while we are calculating.
-        Quaternion quat = orientation;
-        Vector3f vec = thrust;
+        nextInput();
+        float[] input = frame;
         
-        velocity.x = applyThrust(velocity.x, vec.x, stepTime);
-        velocity.y = applyThrust(velocity.y, vec.y, stepTime);
-        velocity.z = applyThrust(velocity.z, vec.z, stepTime);
+        velocity.x = applyThrust(velocity.x, input[4], stepTime);
+        velocity.y = applyThrust(velocity.y, input[5], stepTime);
+        velocity.z = applyThrust(velocity.z, input[6], stepTime);
  
         // Setup the current world rotation of the body 
-        body.orientation.set(quat.getX(), quat.getY(), quat.getZ(), quat.getW());
+        body.orientation.set(input[0], input[1], input[2], input[3]);
         
         // Apply the accelerated velocity oriented into world space       
-        body.velocity = body.orientation.mult(velocity, body.velocity);                        
+        body.setVelocity(body.orientation.mult(velocity, worldVelocity));
     }
 }
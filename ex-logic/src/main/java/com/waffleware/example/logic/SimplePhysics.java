@@ -46,10 +46,15 @@ import com.simsilica.sim.SimTime;
 import com.waffleware.example.entity.data.MassProperties;
 import com.waffleware.example.entity.data.Position;
 import com.waffleware.example.entity.data.SphereShape;
+import com.waffleware.example.logic.stats.TickProfiler;
+import com.waffleware.example.logic.utils.EntityIndex;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *  Just a basic physics simulation that integrates acceleration, 
@@ -63,11 +68,20 @@ public class SimplePhysics extends AbstractGameSystem
     private EntityData ed;
     private BodyContainer bodies;
     
+    // The packed physics state.  Body objects are views into this.
+    private BodyStore store = new BodyStore();
+    
     // Single threaded.... we'll have to take care when adding/removing
     // items.
     //private SafeArrayList<Body> bodies = new SafeArrayList<>(Body.class);
-    private Map<EntityId, Body>          index       = new ConcurrentHashMap<>();
-    private Map<EntityId, ControlDriver> driverIndex = new ConcurrentHashMap<>();
+    // Only modified from the simulation thread but can be read from anywhere
+    private EntityIndex<Body>          index       = new EntityIndex<>();
+    private EntityIndex<ControlDriver> driverIndex = new EntityIndex<>();
+ 
+    // Driver changes from other threads are queued up and applied at the
+    // start of the next frame so that only the simulation thread writes
+    // to the indexes.
+    private ConcurrentLinkedQueue<DriverChange> driverChanges = new ConcurrentLinkedQueue<>();
  
     // Still need these to manage physics listener notifications in a 
     // thread-consistent way   
@@ -75,64 +89,311 @@ public class SimplePhysics extends AbstractGameSystem
     private ConcurrentLinkedQueue<Body> toRemove = new ConcurrentLinkedQueue<>();
  
     private SafeArrayList<PhysicsListener> listeners = new SafeArrayList<>(PhysicsListener.class);
+    private SafeArrayList<ForceGenerator> forces = new SafeArrayList<>(ForceGenerator.class);
+    
+    // Parallel to the listeners array, true for the ones that only want
+    // to see bodies that changed
+    private boolean[] changedOnly = new boolean[0];
+    private int changeListenerCount;
+    private Body[] changedBodies = new Body[0];
+    private double positionEpsilon = 0;
+    private double rotationEpsilon = 0;
+ 
+    // Settings for splitting the driver/integration passes across
+    // multiple threads when there are enough bodies to make it worth it.
+    private ForkJoinPool pool;
+    private int parallelThreshold = 2048;
+    private int chunkSize = 512;
+ 
+    // Fixed time step settings.  A step of 0 means we integrate with
+    // whatever tpf the game loop gives us.
+    private double fixedStep = 0;
+    private int maxSubsteps = 5;
+    private double accumulator;
+    private double alpha = 1;
+    private int lastSubsteps;
+ 
+    // Optional per-phase timing
+    private TickProfiler profiler;
+    private TickProfiler.Timer entityTimer;
+    private TickProfiler.Timer driverTimer;
+    private TickProfiler.Timer integrateTimer;
+    private TickProfiler.Timer parallelTimer;
+    private TickProfiler.Timer changeTimer;
+    private Map<PhysicsListener, TickProfiler.Timer> listenerTimers = new IdentityHashMap<>();
+    private long driverNanos;
+    private long integrateNanos;
+    private long parallelNanos;
     
     public SimplePhysics() {
     }
  
+    /**
+     *  Sets the profiler that will receive timings for each phase of the 
+     *  physics update and for each listener's updateBodies().  If not set 
+     *  then the physics system will look for a TickProfiler registered with 
+     *  the GameSystemManager when it is initialized.  Null turns off timing.
+     */
+    public void setProfiler( TickProfiler profiler ) {
+        this.profiler = profiler;
+        listenerTimers.clear();
+        if( profiler == null ) {
+            entityTimer = null;
+            driverTimer = null;
+            integrateTimer = null;
+            parallelTimer = null;
+            changeTimer = null;
+            return;
+        }
+        entityTimer = profiler.getTimer("physics.entities");
+        driverTimer = profiler.getTimer("physics.drivers");
+        integrateTimer = profiler.getTimer("physics.integrate");
+        parallelTimer = profiler.getTimer("physics.parallelStep");
+        changeTimer = profiler.getTimer("physics.changes");
+    }
+    
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
+ 
+    /**
+     *  Sets the fixed step size in seconds used to integrate the bodies.
+     *  Frame time from the game loop is accumulated and the simulation is
+     *  stepped in whole fixed steps, carrying the remainder to the next frame.
+     *  This keeps integration deterministic regardless of how unevenly the 
+     *  game loop is being called.  Set to 0 to integrate directly with the
+     *  frame's tpf, which is the default.
+     */   
+    public void setFixedStep( double fixedStep ) {
+        this.fixedStep = Math.max(0, fixedStep);
+        this.accumulator = 0;
+    }
+    
+    public double getFixedStep() {
+        return fixedStep;
+    }
+ 
+    /**
+     *  Sets the maximum number of fixed steps that will be run in one frame.
+     *  If the simulation falls farther behind than this (a long GC pause, for
+     *  example) then the extra time is dropped rather than trying to catch up 
+     *  all at once.  Defaults to 5.
+     */   
+    public void setMaxSubsteps( int maxSubsteps ) {
+        this.maxSubsteps = Math.max(1, maxSubsteps);
+    }
+    
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
+ 
+    /**
+     *  Returns how far, from 0 to 1, the accumulated frame time is into the
+     *  next fixed step.  Code presenting the body state can pass this to 
+     *  Body.getInterpolatedPosition() and getInterpolatedOrientation() to
+     *  get the state between the previous and current step.  Always 1 when 
+     *  not running with a fixed step.
+     */   
+    public double getInterpolationAlpha() {
+        return alpha;
+    }
+ 
+    /**
+     *  Returns the number of steps that were integrated during the last frame.
+     */   
+    public int getLastSubstepCount() {
+        return lastSubsteps;
+    }
+ 
+    /**
+     *  Sets the pool that will be used to run the driver and integration
+     *  passes in parallel once the body count reaches the parallel threshold.
+     *  Defaults to the common ForkJoinPool.
+     */   
+    public void setParallelPool( ForkJoinPool pool ) {
+        this.pool = pool;
+    }
+    
+    public ForkJoinPool getParallelPool() {
+        if( pool == null ) {
+            pool = ForkJoinPool.commonPool();
+        }
+        return pool;
+    }
+ 
+    /**
+     *  Sets the number of bodies at which the driver and integration passes
+     *  switch from the simulation thread to the parallel pool.  Set to
+     *  Integer.MAX_VALUE to always run single threaded.  Defaults to 2048.
+     */   
+    public void setParallelThreshold( int parallelThreshold ) {
+        this.parallelThreshold = parallelThreshold;
+    }
+    
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+ 
+    /**
+     *  Sets the number of bodies that each parallel task will process.
+     *  Defaults to 512.
+     */   
+    public void setChunkSize( int chunkSize ) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+    
+    public int getChunkSize() {
+        return chunkSize;
+    }
+ 
     /**
      *  Adds a listener that will be notified about physics related updates.
      *  This is not a thread safe method call so must be called during setup
      *  or from the physics/simulation thread.
      */   
     public void addPhysicsListener( PhysicsListener l ) {
+        addPhysicsListener(l, false);
+    }
+ 
+    /**
+     *  Adds a listener that will be notified about physics related updates.
+     *  If changedOnly is true then updateBodies() will only be passed the bodies
+     *  that moved or rotated more than the position and rotation epsilons since
+     *  the last time they were passed.  This is not a thread safe method call so 
+     *  must be called during setup or from the physics/simulation thread.
+     */   
+    public void addPhysicsListener( PhysicsListener l, boolean changedOnly ) {
         listeners.add(l);
+        this.changedOnly = Arrays.copyOf(this.changedOnly, listeners.size());
+        this.changedOnly[listeners.size() - 1] = changedOnly;
+        if( changedOnly ) {
+            changeListenerCount++;
+        }
     }
 
     public void removePhysicsListener( PhysicsListener l ) {
-        listeners.remove(l);
+        int index = listeners.indexOf(l);
+        if( index < 0 ) {
+            return;
+        }
+        listeners.remove(index);
+        if( changedOnly[index] ) {
+            changeListenerCount--;
+        }
+        boolean[] array = new boolean[listeners.size()];
+        System.arraycopy(changedOnly, 0, array, 0, index);
+        System.arraycopy(changedOnly, index + 1, array, index, array.length - index);
+        changedOnly = array;
+    }
+
+    /**
+     *  Adds a force generator that will contribute acceleration to the bodies
+     *  at the start of every step.  Once any generator is registered, body 
+     *  accelerations are cleared at the start of each step and rebuilt from the 
+     *  generators and the control drivers.  This is not a thread safe method call 
+     *  so must be called during setup or from the physics/simulation thread.
+     */   
+    public void addForceGenerator( ForceGenerator f ) {
+        forces.add(f);
+    }
+    
+    public void removeForceGenerator( ForceGenerator f ) {
+        forces.remove(f);
+    }
+ 
+    /**
+     *  Sets how far a body must move along any axis before it is considered
+     *  changed.  Defaults to 0, ie: any movement at all.
+     */   
+    public void setPositionEpsilon( double positionEpsilon ) {
+        this.positionEpsilon = positionEpsilon;
+    }
+    
+    public double getPositionEpsilon() {
+        return positionEpsilon;
+    }
+ 
+    /**
+     *  Sets how much any component of a body's orientation quaternion must 
+     *  change before it is considered changed.  Defaults to 0.
+     */   
+    public void setRotationEpsilon( double rotationEpsilon ) {
+        this.rotationEpsilon = rotationEpsilon;
+    }
+    
+    public double getRotationEpsilon() {
+        return rotationEpsilon;
     }
  
     public Body getBody( EntityId entityId ) {
         return index.get(entityId);
     }
  
+    /**
+     *  Returns the packed body storage.  This should only be accessed from
+     *  the physics/simulation thread.
+     */   
+    public BodyStore getBodyStore() {
+        return store;
+    }
+ 
+    /**
+     *  Sets the control driver for the specified entity's body.  This can
+     *  be called from any thread and before the body exists.  The driver is 
+     *  hooked up at the start of the next physics frame so getControlDriver()
+     *  will not reflect it until then.  A null driver removes the current one.
+     */   
     public void setControlDriver( EntityId entityId, ControlDriver driver ) {
-        synchronized(this) {
-            driverIndex.put(entityId, driver);
-            Body current = getBody(entityId);
-            if( current != null ) {
-                current.driver = driver;
-            }
-        }
+        driverChanges.add(new DriverChange(entityId, driver));
     }
     
     public ControlDriver getControlDriver( EntityId entityId ) {
         return driverIndex.get(entityId);
     }
  
+    /**
+     *  Applies any pending setControlDriver() calls.  Called from the
+     *  simulation thread.
+     */   
+    protected void applyDriverChanges() {
+        DriverChange change = null;
+        while( (change = driverChanges.poll()) != null ) {
+            if( change.driver == null ) {
+                driverIndex.remove(change.entityId);
+            } else {
+                driverIndex.put(change.entityId, change.driver);
+            }
+            Body current = index.get(change.entityId);
+            if( current != null ) {
+                current.driver = change.driver;
+            }
+        }
+    }
+ 
+    /**
+     *  Returns the body for the specified entity, creating it if 'create' is 
+     *  true and it doesn't exist yet.  Must only be called from the simulation 
+     *  thread.
+     */   
     protected Body createBody( EntityId entityId, double invMass, double radius, boolean create ) {
         Body result = index.get(entityId);
         if( result == null && create ) {
-            synchronized(this) {
-                result = index.get(entityId);
-                if( result != null ) {
-                    return result;
-                }
-                result = new Body(entityId);
-                result.radius = radius;
-                result.invMass = invMass;
-                
-                // Hookup the driver if it has one waiting
-                result.driver = driverIndex.get(entityId);
-                
-                // Set it up to be managed by physics
-                toAdd.add(result);
-                index.put(entityId, result);         
-            }
+            result = store.create(entityId, invMass, radius);
+            
+            // Hookup the driver if it has one waiting
+            result.driver = driverIndex.get(entityId);
+            
+            // Set it up to be managed by physics
+            toAdd.add(result);
+            index.put(entityId, result);         
         }
         return result;
     }
  
+    /**
+     *  Removes the body for the specified entity.  Must only be called from 
+     *  the simulation thread.
+     */   
     protected boolean removeBody( EntityId entityId ) {
         Body result = index.remove(entityId);
         if( result != null ) {
@@ -147,6 +408,12 @@ public class SimplePhysics extends AbstractGameSystem
         if( ed == null ) {
             throw new RuntimeException("SimplePhysics system requires an EntityData object.");
         }
+        if( profiler == null ) {
+            TickProfiler registered = getSystem(TickProfiler.class);
+            if( registered != null ) {
+                setProfiler(registered);
+            }
+        }
     }
     
     protected void terminate() {
@@ -169,6 +436,10 @@ public class SimplePhysics extends AbstractGameSystem
                 for( PhysicsListener l : listeners.getArray() ) {
                     l.removeBody(body);
                 }
+                
+                // Only free the slot and recycle the body once the 
+                // listeners have seen it
+                store.remove(body);
             }
         } 
     }
@@ -191,39 +462,225 @@ public class SimplePhysics extends AbstractGameSystem
         for( PhysicsListener l : listeners.getArray() ) {
             l.beginFrame(time);
         }
+        long mark = System.nanoTime();
+ 
+        // Hookup any drivers that were set since last frame
+        applyDriverChanges();
  
         // Update the entity list       
         bodies.update();
         
         // Fire off any pending add/remove events 
         fireBodyListListeners();
+        mark = lap(entityTimer, mark);
  
         double tpf = time.getTpf();
+        Body[] array = store.getArray();
+        int count = store.size();
  
-        // Apply control driver changes
-        for( Body b : bodies.getArray() ) {
-            if( b.driver != null ) {
-                b.driver.update(tpf, b);
+        if( fixedStep <= 0 ) {
+            simulate(tpf, count);
+            lastSubsteps = 1;
+            alpha = 1;
+        } else {
+            accumulator += tpf;
+            int steps = (int)Math.min(maxSubsteps, Math.floor(accumulator / fixedStep));
+            for( int i = 0; i < steps; i++ ) {
+                if( i == steps - 1 ) {
+                    // Keep the state from before the last step so that
+                    // it can be interpolated
+                    store.savePreviousState();
+                }
+                simulate(fixedStep, count);
+                accumulator -= fixedStep;
+            }
+            if( accumulator >= fixedStep ) {
+                // We've hit the substep cap so drop the whole steps we
+                // couldn't get to instead of spiraling.
+                accumulator %= fixedStep;
+            }
+            
+            // Rounding can leave a hair below 0 after the last step
+            accumulator = Math.max(0, accumulator);
+            lastSubsteps = steps;
+            alpha = accumulator / fixedStep;
+        }
+        if( lastSubsteps == 0 ) {
+            // Nothing moved so there is nothing new to publish
+            for( PhysicsListener l : listeners.getArray() ) {
+                l.endFrame(time);
             }
+            return;
+        }
+        if( profiler != null ) {
+            recordStepTimes();
         }
+        mark = System.nanoTime();
  
-        // Integrate
-        for( Body b : bodies.getArray() ) {
-            b.integrate(tpf);
+        // Figure out which bodies actually moved
+        int changedCount = 0;
+        if( changeListenerCount > 0 ) {
+            if( changedBodies.length < array.length ) {
+                changedBodies = new Body[array.length];
+            }
+            changedCount = store.collectChanges(positionEpsilon, rotationEpsilon, changedBodies);
         }
+        mark = lap(changeTimer, mark);
  
         // Publish the results
-        for( PhysicsListener l : listeners.getArray() ) {
-            for( Body b : bodies.getArray() ) {
-                l.updateBody(b);
+        PhysicsListener[] listenerArray = listeners.getArray();
+        for( int i = 0; i < listenerArray.length; i++ ) {
+            PhysicsListener l = listenerArray[i];
+            if( changedOnly[i] ) {
+                l.updateBodies(changedBodies, changedCount);
+            } else {
+                l.updateBodies(array, count);
+            }
+            if( profiler != null ) {
+                mark = lap(getListenerTimer(l), mark);
             }
         }
+        
+        // Don't hold onto bodies that might be removed
+        Arrays.fill(changedBodies, 0, changedCount, null);
                
         for( PhysicsListener l : listeners.getArray() ) {
             l.endFrame(time);
         }
     }
 
+    /**
+     *  Applies control driver changes and integrates all bodies for one
+     *  step.  invoke() doesn't return until every chunk is done so callers 
+     *  always see a fully integrated step.
+     */
+    protected void simulate( double stepTime, int count ) {
+        if( count >= parallelThreshold ) {
+            long start = System.nanoTime();
+            getParallelPool().invoke(new StepTask(stepTime, 0, count));
+            parallelNanos += System.nanoTime() - start;
+        } else if( profiler != null ) {
+            // Time the halves of the step separately
+            long start = System.nanoTime();
+            applyControls(stepTime, 0, count);
+            long split = System.nanoTime();
+            store.integrate(stepTime, 0, count);
+            driverNanos += split - start;
+            integrateNanos += System.nanoTime() - split;
+        } else {
+            step(stepTime, 0, count);
+        }
+    }
+ 
+    /**
+     *  Records the step phase times accumulated over all of this frame's
+     *  steps.
+     */
+    private void recordStepTimes() {
+        if( parallelNanos > 0 ) {
+            parallelTimer.record(parallelNanos);
+        } else {
+            driverTimer.record(driverNanos);
+            integrateTimer.record(integrateNanos);
+        }
+        parallelNanos = 0;
+        driverNanos = 0;
+        integrateNanos = 0;
+    }
+ 
+    private TickProfiler.Timer getListenerTimer( PhysicsListener l ) {
+        TickProfiler.Timer result = listenerTimers.get(l);
+        if( result == null ) {
+            String name = l.getClass().getSimpleName();
+            if( name.isEmpty() ) {
+                name = l.getClass().getName();
+            }
+            result = profiler.getTimer("physics.listener." + name);
+            listenerTimers.put(l, result);
+        }
+        return result;
+    }
+ 
+    /**
+     *  Records the time since start in the specified timer, if there is one,
+     *  and returns the current time.
+     */
+    private long lap( TickProfiler.Timer timer, long start ) {
+        long now = System.nanoTime();
+        if( timer != null ) {
+            timer.record(now - start);
+        }
+        return now;
+    }
+ 
+    /**
+     *  Accumulates the forces, runs the control drivers, and then integrates 
+     *  the bodies in the slot range [start, end).  Bodies are independent of 
+     *  each other so ranges can safely be stepped on different threads.
+     */
+    protected void step( double tpf, int start, int end ) {
+        applyControls(tpf, start, end);
+        store.integrate(tpf, start, end);
+    }
+ 
+    /**
+     *  Accumulates the forces and runs the control drivers for the bodies
+     *  in the slot range [start, end).
+     */
+    protected void applyControls( double tpf, int start, int end ) {
+        ForceGenerator[] generators = forces.getArray();
+        if( generators.length > 0 ) {
+            store.clearAccelerations(start, end);
+            for( ForceGenerator f : generators ) {
+                f.applyForces(store, tpf, start, end);
+            }
+        }
+        Body[] array = store.getArray();
+        for( int i = start; i < end; i++ ) {
+            Body b = array[i];
+            ControlDriver driver = b.driver;
+            if( driver != null ) {
+                driver.update(tpf, b);
+            }
+        }
+    }
+ 
+    /**
+     *  Recursively splits a slot range until it is small enough to step
+     *  directly.
+     */
+    private class StepTask extends RecursiveAction {
+        private final double tpf;
+        private final int start;
+        private final int end;
+        
+        public StepTask( double tpf, int start, int end ) {
+            this.tpf = tpf;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        protected void compute() {
+            if( end - start <= chunkSize ) {
+                step(tpf, start, end);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new StepTask(tpf, start, mid), new StepTask(tpf, mid, end));
+        }
+    }
+
+    private static class DriverChange {
+        final EntityId entityId;
+        final ControlDriver driver;
+        
+        public DriverChange( EntityId entityId, ControlDriver driver ) {
+            this.entityId = entityId;
+            this.driver = driver;
+        }
+    }
+
     /**
      *  Maps the appropriate entities to physics bodies.
      */
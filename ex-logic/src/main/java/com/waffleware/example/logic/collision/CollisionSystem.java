@@ -0,0 +1,236 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.collision;
+
+import com.jme3.util.SafeArrayList;
+import com.simsilica.sim.AbstractGameSystem;
+import com.simsilica.sim.SimTime;
+import com.waffleware.example.logic.Body;
+import com.waffleware.example.logic.BodyStore;
+import com.waffleware.example.logic.PhysicsListener;
+import com.waffleware.example.logic.SimplePhysics;
+
+import java.util.Arrays;
+
+/**
+ *  Detects overlapping sphere bodies after each physics frame and
+ *  reports them to the registered ContactListeners.  The broadphase
+ *  drops every body into a uniform SpatialHash of all of the cells its
+ *  bounds touch and only bodies sharing a cell are tested against each
+ *  other, so cost grows with the number of bodies and not with the
+ *  number of pairs.
+ *
+ *  A pair can share more than one cell so each pair is only tested in
+ *  the cell containing the minimum corner of the overlap of their cell
+ *  ranges.  For this to stay cheap, the cell size should be a few times
+ *  larger than the typical body radius.
+ *
+ *  @author    Paul Speed
+ */
+public class CollisionSystem extends AbstractGameSystem
+  implements PhysicsListener
+{
+    private SimplePhysics physics;
+    private SpatialHash hash;
+    private SafeArrayList<ContactListener> listeners = new SafeArrayList<>(ContactListener.class);
+    private Contact contact = new Contact();
+ 
+    // The minimum cell of each slot, three per slot
+    private int[] minCells = new int[0];
+    private int lastContactCount;
+ 
+    /**
+     *  Creates a collision system whose broadphase cells are cellSize on
+     *  a side.  Use a factor of the zone size to keep the cells aligned with
+     *  the network zones.
+     */   
+    public CollisionSystem( double cellSize ) {
+        this.hash = new SpatialHash(cellSize);
+    }
+ 
+    /**
+     *  Adds a listener that will be notified about body contacts.  This is 
+     *  not a thread safe method call so must be called during setup or from 
+     *  the physics/simulation thread.
+     */   
+    public void addContactListener( ContactListener l ) {
+        listeners.add(l);
+    }
+    
+    public void removeContactListener( ContactListener l ) {
+        listeners.remove(l);
+    }
+ 
+    /**
+     *  Returns the number of contacts found during the last frame.
+     */   
+    public int getLastContactCount() {
+        return lastContactCount;
+    }
+    
+    @Override
+    protected void initialize() {
+        this.physics = getSystem(SimplePhysics.class);
+        if( physics == null ) {
+            throw new RuntimeException("CollisionSystem requires a SimplePhysics system.");
+        }
+        physics.addPhysicsListener(this);
+    }
+    
+    @Override
+    protected void terminate() {
+        physics.removePhysicsListener(this);
+    }
+ 
+    @Override
+    public void beginFrame( SimTime time ) {
+    }
+ 
+    @Override
+    public void addBody( Body body ) {
+    }
+ 
+    @Override
+    public void updateBody( Body body ) {
+        // We do everything in one pass in updateBodies()
+    }
+ 
+    @Override
+    public void updateBodies( Body[] bodies, int count ) {
+        if( listeners.isEmpty() ) {
+            lastContactCount = 0;
+            return;
+        }
+        lastContactCount = detect(physics.getBodyStore());
+    }
+ 
+    @Override
+    public void removeBody( Body body ) {
+    }
+ 
+    @Override
+    public void endFrame( SimTime time ) {
+    }
+ 
+    protected int detect( BodyStore store ) {
+        int count = store.size();
+        double[] pos = store.getPositionArray();
+        double[] radius = store.getRadiusArray();
+        Body[] bodies = store.getArray();
+        
+        if( minCells.length < count * 3 ) {
+            minCells = Arrays.copyOf(minCells, store.getArray().length * 3);
+        }
+        int[] minCells = this.minCells;
+        
+        // Broadphase: bin every body into the cells it touches
+        hash.clear();
+        for( int slot = 0; slot < count; slot++ ) {
+            int i = slot * 3;
+            double r = radius[slot];
+            int x0 = hash.toCell(pos[i] - r);
+            int y0 = hash.toCell(pos[i + 1] - r);
+            int z0 = hash.toCell(pos[i + 2] - r);
+            int x1 = hash.toCell(pos[i] + r);
+            int y1 = hash.toCell(pos[i + 1] + r);
+            int z1 = hash.toCell(pos[i + 2] + r);
+            minCells[i] = x0;
+            minCells[i + 1] = y0;
+            minCells[i + 2] = z0;
+            for( int x = x0; x <= x1; x++ ) {
+                for( int y = y0; y <= y1; y++ ) {
+                    for( int z = z0; z <= z1; z++ ) {
+                        hash.insert(x, y, z, slot);
+                    }
+                }
+            }
+        }
+ 
+        // Narrowphase: test the pairs that share a cell
+        ContactListener[] array = listeners.getArray();
+        int contacts = 0;
+        for( int n = 0, cells = hash.getCellCount(); n < cells; n++ ) {
+            long key = hash.getCellKey(n);
+            int cx = SpatialHash.keyX(key);
+            int cy = SpatialHash.keyY(key);
+            int cz = SpatialHash.keyZ(key);
+            for( int e = hash.getCellHead(n); e != -1; e = hash.getNext(e) ) {
+                int a = hash.getValue(e);
+                int ia = a * 3;
+                for( int f = hash.getNext(e); f != -1; f = hash.getNext(f) ) {
+                    int b = hash.getValue(f);
+                    int ib = b * 3;
+                    
+                    // Only the cell with the min corner of the shared range
+                    // gets to test the pair
+                    if( Math.max(minCells[ia], minCells[ib]) != cx
+                        || Math.max(minCells[ia + 1], minCells[ib + 1]) != cy
+                        || Math.max(minCells[ia + 2], minCells[ib + 2]) != cz ) {
+                        continue;
+                    } 
+                    
+                    double dx = pos[ib] - pos[ia];
+                    double dy = pos[ib + 1] - pos[ia + 1];
+                    double dz = pos[ib + 2] - pos[ia + 2];
+                    double r = radius[a] + radius[b];
+                    double distSq = dx * dx + dy * dy + dz * dz;
+                    if( distSq >= r * r ) {
+                        continue;
+                    }
+                    
+                    double dist = Math.sqrt(distSq);
+                    contact.a = bodies[a];
+                    contact.b = bodies[b];
+                    contact.penetration = r - dist;
+                    if( dist > 0 ) {
+                        contact.normal.set(dx / dist, dy / dist, dz / dist);
+                    } else {
+                        // Perfectly coincident so just pick a direction
+                        contact.normal.set(0, 1, 0);
+                    }
+                    contacts++;
+                    for( ContactListener l : array ) {
+                        l.newContact(contact);
+                    }
+                }
+            }
+        }
+        contact.a = null;
+        contact.b = null;
+        return contacts;
+    }
+}
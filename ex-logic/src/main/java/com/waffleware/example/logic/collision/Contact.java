@@ -0,0 +1,86 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.collision;
+
+import com.simsilica.mathd.Vec3d;
+import com.waffleware.example.logic.Body;
+
+/**
+ *  Information about two overlapping bodies.  The same Contact instance
+ *  is reused for every contact reported in a frame so listeners must copy
+ *  anything they want to keep.
+ *
+ *  @author    Paul Speed
+ */
+public class Contact {
+
+    Body a;
+    Body b;
+    final Vec3d normal = new Vec3d();
+    double penetration;
+    
+    public Contact() {
+    }
+ 
+    public Body getBodyA() {
+        return a;
+    }
+    
+    public Body getBodyB() {
+        return b;
+    }
+ 
+    /**
+     *  Returns the unit vector pointing from body A's center toward
+     *  body B's center.
+     */   
+    public Vec3d getNormal() {
+        return normal;
+    }
+ 
+    /**
+     *  Returns how far the two spheres overlap along the normal.
+     */   
+    public double getPenetration() {
+        return penetration;
+    }
+ 
+    @Override
+    public String toString() {
+        return "Contact[a=" + a + ", b=" + b + ", normal=" + normal + ", penetration=" + penetration + "]";
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.collision;
+
+import java.util.Arrays;
+
+/**
+ *  A uniform grid of cells hashed on primitive long keys that maps each
+ *  cell to a linked list of int values.  Cells are cubes of cellSize
+ *  and cell (0, 0, 0) starts at the origin so when cellSize is a factor
+ *  of the zone size the cells line up with the network zones.
+ *
+ *  Clearing is just an epoch bump so a hash can be refilled every
+ *  frame without touching its arrays and without generating garbage once
+ *  it has grown to the working set size.
+ *
+ *  @author    Paul Speed
+ */
+public class SpatialHash {
+ 
+    private static final int MASK = 0x1FFFFF;
+ 
+    private final double cellSize;
+    private final double invCellSize;
+    
+    // The open addressed cell table
+    private long[] keys;
+    private int[] heads;
+    private int[] stamps;
+    private int epoch = 1;
+    private int tableMask;
+    
+    // The cells that are in use this epoch
+    private int[] used;
+    private int usedCount;
+    
+    // The entries, as linked lists per cell
+    private int[] values;
+    private int[] next;
+    private int entryCount;
+ 
+    public SpatialHash( double cellSize ) {
+        this(cellSize, 1024);
+    }
+    
+    public SpatialHash( double cellSize, int initialCells ) {
+        this.cellSize = cellSize;
+        this.invCellSize = 1.0 / cellSize;
+        int capacity = Integer.highestOneBit(Math.max(16, initialCells * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        this.stamps = new int[capacity];
+        this.tableMask = capacity - 1;
+        this.used = new int[capacity];
+        this.values = new int[initialCells];
+        this.next = new int[initialCells];
+    }
+ 
+    public double getCellSize() {
+        return cellSize;
+    }
+ 
+    /**
+     *  Returns the cell coordinate that contains the specified world coordinate.
+     */   
+    public int toCell( double v ) {
+        return (int)Math.floor(v * invCellSize);
+    }
+ 
+    /**
+     *  Packs 21 bits of each cell coordinate into a single long key.
+     */   
+    public static long key( int x, int y, int z ) {
+        return ((long)(x & MASK) << 42) | ((long)(y & MASK) << 21) | (z & MASK);
+    }
+    
+    public static int keyX( long key ) {
+        return (int)(key << 1 >> 43);
+    }
+    
+    public static int keyY( long key ) {
+        return (int)(key << 22 >> 43);
+    }
+    
+    public static int keyZ( long key ) {
+        return (int)(key << 43 >> 43);
+    }
+ 
+    private static int hash( long key ) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+ 
+    /**
+     *  Removes all entries.
+     */   
+    public void clear() {
+        usedCount = 0;
+        entryCount = 0;
+        if( ++epoch == 0 ) {
+            // Wrapped, so really clear the stamps
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+ 
+    /**
+     *  Adds a value to the specified cell.
+     */   
+    public void insert( int x, int y, int z, int value ) {
+        insert(key(x, y, z), value);
+    }
+    
+    public void insert( long key, int value ) {
+        if( entryCount == values.length ) {
+            values = Arrays.copyOf(values, entryCount * 2);
+            next = Arrays.copyOf(next, entryCount * 2);
+        }
+        if( (usedCount + 1) * 2 > keys.length ) {
+            rehash(keys.length * 2);
+        }
+        int cell = findOrCreate(key);
+        int entry = entryCount++;
+        values[entry] = value;
+        next[entry] = heads[cell];
+        heads[cell] = entry;
+    }
+    
+    private int findOrCreate( long key ) {
+        int i = hash(key) & tableMask;
+        while( stamps[i] == epoch ) {
+            if( keys[i] == key ) {
+                return i;
+            }
+            i = (i + 1) & tableMask;
+        }
+        stamps[i] = epoch;
+        keys[i] = key;
+        heads[i] = -1;
+        used[usedCount++] = i;
+        return i;
+    }
+    
+    private void rehash( int capacity ) {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        int[] oldUsed = used;
+        int oldCount = usedCount;
+        
+        keys = new long[capacity];
+        heads = new int[capacity];
+        stamps = new int[capacity];
+        used = new int[capacity];
+        tableMask = capacity - 1;
+        usedCount = 0;
+        epoch = 1;
+        for( int u = 0; u < oldCount; u++ ) {
+            int old = oldUsed[u];
+            int cell = findOrCreate(oldKeys[old]);
+            heads[cell] = oldHeads[old];
+        }
+    }
+ 
+    /**
+     *  Returns the first entry in the specified cell or -1 if the
+     *  cell is empty.
+     */   
+    public int find( long key ) {
+        int i = hash(key) & tableMask;
+        while( stamps[i] == epoch ) {
+            if( keys[i] == key ) {
+                return heads[i];
+            }
+            i = (i + 1) & tableMask;
+        }
+        return -1;
+    }
+ 
+    /**
+     *  Returns the number of non-empty cells.
+     */   
+    public int getCellCount() {
+        return usedCount;
+    }
+ 
+    /**
+     *  Returns the key of the n'th non-empty cell.
+     */   
+    public long getCellKey( int n ) {
+        return keys[used[n]];
+    }
+    
+    /**
+     *  Returns the first entry of the n'th non-empty cell.
+     */   
+    public int getCellHead( int n ) {
+        return heads[used[n]];
+    }
+ 
+    /**
+     *  Returns the entry following the specified entry in its cell or
+     *  -1 if it is the last.
+     */   
+    public int getNext( int entry ) {
+        return next[entry];
+    }
+    
+    public int getValue( int entry ) {
+        return values[entry];
+    }
+}
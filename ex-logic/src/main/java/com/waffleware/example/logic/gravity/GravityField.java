@@ -0,0 +1,422 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.gravity;
+
+import java.util.Arrays;
+
+/**
+ *  A static set of gravity wells and the octree used to approximate
+ *  their combined pull.  Each well's mass is the cube of its radius
+ *  so the overall pull is scaled by a single strength constant.  To keep 
+ *  things from blowing up near the center of a well, the pull of each 
+ *  well is softened by its radius.
+ *
+ *  The wells are expected to change rarely so the octree is built once
+ *  with build() and then shared, read-only, by any number of threads.
+ *  accumulate() walks the tree Barnes-Hut style: any node that is small 
+ *  enough compared to its distance from the query point is treated as a 
+ *  single point mass at its center of mass instead of visiting the wells 
+ *  under it.  accumulateNaive() sums every well directly and is mostly
+ *  useful to check the approximation.
+ *
+ *  @author    Paul Speed
+ */
+public class GravityField {
+
+    /**
+     *  The deepest that the octree will go.  Wells that are still sharing
+     *  a node at this depth just share a leaf.
+     */
+    public static final int MAX_DEPTH = 20;
+    
+    // Depth first traversal pushes all 8 children of each node it opens
+    // so this is as deep as the stack can get. 
+    private static final int STACK_SIZE = 7 * MAX_DEPTH + 8;
+
+    private double strength;
+    private double theta = 0.5;
+    private int leafSize = 4;
+
+    // The wells, x, y, z triplets for the positions
+    private int wellCount;
+    private double[] wellPos = new double[16 * 3];
+    private double[] wellMass = new double[16];
+    private double[] wellSoftSq = new double[16];
+    
+    // The flattened octree.  Children of a node are always allocated
+    // together in 8 consecutive nodes.
+    private int nodeCount;
+    private double[] nodeCenter = new double[64 * 3];
+    private double[] nodeHalf = new double[64];
+    private double[] nodeCom = new double[64 * 3];
+    private double[] nodeMass = new double[64];
+    private double[] nodeSoftSq = new double[64];
+    private int[] nodeChild = new int[64];
+    private int[] nodeFirst = new int[64];
+    private int[] nodeSize = new int[64];
+    
+    // Well indexes sorted so that every node's wells are contiguous
+    private int[] order = new int[16];
+    private int[] scratch = new int[16];
+    private boolean dirty;
+    
+    private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[STACK_SIZE]);
+ 
+    public GravityField() {
+        this(0.05);
+    }
+    
+    public GravityField( double strength ) {
+        this.strength = strength;
+    }
+ 
+    /**
+     *  Sets the constant that the summed mass/distance terms are scaled by.
+     */   
+    public void setStrength( double strength ) {
+        this.strength = strength;
+    }
+    
+    public double getStrength() {
+        return strength;
+    }
+ 
+    /**
+     *  Sets the Barnes-Hut opening angle.  A node is approximated by its
+     *  center of mass when its size divided by its distance is less than theta.
+     *  0 always opens every node which gives the same result as the naive sum.
+     *  Defaults to 0.5.
+     */   
+    public void setTheta( double theta ) {
+        this.theta = Math.max(0, theta);
+    }
+    
+    public double getTheta() {
+        return theta;
+    }
+ 
+    /**
+     *  Sets the maximum number of wells that a leaf can hold before it is split.
+     *  Takes effect on the next build().  Defaults to 4.
+     */   
+    public void setLeafSize( int leafSize ) {
+        this.leafSize = Math.max(1, leafSize);
+        this.dirty = true;
+    }
+    
+    public int getLeafSize() {
+        return leafSize;
+    }
+ 
+    public int getWellCount() {
+        return wellCount;
+    }
+    
+    public int getNodeCount() {
+        return nodeCount;
+    }
+ 
+    /**
+     *  Returns true if wells have been added or removed since the last build().
+     */   
+    public boolean isDirty() {
+        return dirty;
+    }
+ 
+    /**
+     *  Removes all wells.  The tree is empty until the next build().
+     */   
+    public void clear() {
+        wellCount = 0;
+        dirty = true;
+    }
+ 
+    /**
+     *  Adds a well at the specified location and returns its index.  The
+     *  tree is not updated until the next build().
+     */   
+    public int addWell( double x, double y, double z, double radius ) {
+        if( wellCount == wellMass.length ) {
+            int capacity = wellCount * 2;
+            wellPos = Arrays.copyOf(wellPos, capacity * 3);
+            wellMass = Arrays.copyOf(wellMass, capacity);
+            wellSoftSq = Arrays.copyOf(wellSoftSq, capacity);
+        }
+        int index = wellCount++;
+        int i = index * 3;
+        wellPos[i] = x;
+        wellPos[i + 1] = y;
+        wellPos[i + 2] = z;
+        wellMass[index] = radius * radius * radius;
+        wellSoftSq[index] = radius * radius;
+        dirty = true;
+        return index;
+    }
+ 
+    /**
+     *  Rebuilds the octree from the current wells.  This must not be called
+     *  while other threads might be calling accumulate().
+     */   
+    public void build() {
+        nodeCount = 0;
+        dirty = false;
+        if( wellCount == 0 ) {
+            return;
+        }
+        if( order.length < wellCount ) {
+            order = new int[wellMass.length];
+            scratch = new int[wellMass.length];
+        }
+        for( int i = 0; i < wellCount; i++ ) {
+            order[i] = i;
+        }
+        
+        // Find the bounding cube of all of the wells
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+        for( int i = 0, last = wellCount * 3; i < last; i += 3 ) {
+            minX = Math.min(minX, wellPos[i]);
+            minY = Math.min(minY, wellPos[i + 1]);
+            minZ = Math.min(minZ, wellPos[i + 2]);
+            maxX = Math.max(maxX, wellPos[i]);
+            maxY = Math.max(maxY, wellPos[i + 1]);
+            maxZ = Math.max(maxZ, wellPos[i + 2]);
+        }
+        double half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5;
+        int root = allocNode((minX + maxX) * 0.5, (minY + maxY) * 0.5, (minZ + maxZ) * 0.5, 
+                             Math.max(half, 1e-6));
+        buildNode(root, 0, wellCount, 0);
+    }
+ 
+    private int allocNode( double x, double y, double z, double half ) {
+        if( nodeCount == nodeMass.length ) {
+            int capacity = nodeCount * 2;
+            nodeCenter = Arrays.copyOf(nodeCenter, capacity * 3);
+            nodeHalf = Arrays.copyOf(nodeHalf, capacity);
+            nodeCom = Arrays.copyOf(nodeCom, capacity * 3);
+            nodeMass = Arrays.copyOf(nodeMass, capacity);
+            nodeSoftSq = Arrays.copyOf(nodeSoftSq, capacity);
+            nodeChild = Arrays.copyOf(nodeChild, capacity);
+            nodeFirst = Arrays.copyOf(nodeFirst, capacity);
+            nodeSize = Arrays.copyOf(nodeSize, capacity);
+        }
+        int node = nodeCount++;
+        int i = node * 3;
+        nodeCenter[i] = x;
+        nodeCenter[i + 1] = y;
+        nodeCenter[i + 2] = z;
+        nodeHalf[node] = half;
+        nodeChild[node] = -1;
+        return node;
+    }
+    
+    private void buildNode( int node, int first, int count, int depth ) {
+        nodeFirst[node] = first;
+        nodeSize[node] = count;
+        
+        // Total mass and center of mass of everything under this node
+        double m = 0;
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double soft = 0;
+        for( int k = first, last = first + count; k < last; k++ ) {
+            int w = order[k];
+            int i = w * 3;
+            double mw = wellMass[w];
+            m += mw;
+            x += wellPos[i] * mw;
+            y += wellPos[i + 1] * mw;
+            z += wellPos[i + 2] * mw;
+            soft = Math.max(soft, wellSoftSq[w]);
+        }
+        int n = node * 3;
+        nodeMass[node] = m;
+        nodeSoftSq[node] = soft;
+        if( m > 0 ) {
+            nodeCom[n] = x / m;
+            nodeCom[n + 1] = y / m;
+            nodeCom[n + 2] = z / m;
+        } else {
+            nodeCom[n] = nodeCenter[n];
+            nodeCom[n + 1] = nodeCenter[n + 1];
+            nodeCom[n + 2] = nodeCenter[n + 2];
+        }
+        
+        if( count <= leafSize || depth >= MAX_DEPTH ) {
+            return;
+        }
+        
+        // Bucket the wells into octants, bit 0 = x, bit 1 = y, bit 2 = z
+        double cx = nodeCenter[n];
+        double cy = nodeCenter[n + 1];
+        double cz = nodeCenter[n + 2];
+        int[] counts = new int[8];
+        for( int k = first, last = first + count; k < last; k++ ) {
+            counts[octant(order[k], cx, cy, cz)]++;
+        }
+        int[] offsets = new int[8];
+        for( int o = 1; o < 8; o++ ) {
+            offsets[o] = offsets[o - 1] + counts[o - 1];
+        }
+        int[] next = offsets.clone();
+        for( int k = first, last = first + count; k < last; k++ ) {
+            int w = order[k];
+            scratch[first + next[octant(w, cx, cy, cz)]++] = w;
+        }
+        System.arraycopy(scratch, first, order, first, count);
+ 
+        double h = nodeHalf[node] * 0.5;
+        int child = nodeCount;
+        for( int o = 0; o < 8; o++ ) {
+            allocNode(cx + ((o & 1) != 0 ? h : -h), 
+                      cy + ((o & 2) != 0 ? h : -h), 
+                      cz + ((o & 4) != 0 ? h : -h), h);
+        }
+        nodeChild[node] = child;
+        for( int o = 0; o < 8; o++ ) {
+            buildNode(child + o, first + offsets[o], counts[o], depth + 1);
+        }
+    }
+    
+    private int octant( int well, double cx, double cy, double cz ) {
+        int i = well * 3;
+        return (wellPos[i] >= cx ? 1 : 0)
+             | (wellPos[i + 1] >= cy ? 2 : 0)
+             | (wellPos[i + 2] >= cz ? 4 : 0);
+    }
+ 
+    /**
+     *  Adds the approximate acceleration at the specified location to
+     *  out[offset], out[offset + 1], and out[offset + 2].  This is safe to
+     *  call from multiple threads at once as long as nobody is calling build().
+     */   
+    public void accumulate( double x, double y, double z, double[] out, int offset ) {
+        if( nodeCount == 0 ) {
+            return;
+        }
+        double thetaSq = theta * theta;
+        double ax = 0;
+        double ay = 0;
+        double az = 0;
+        
+        int[] stack = stacks.get();
+        int top = 0;
+        stack[top++] = 0;
+        while( top > 0 ) {
+            int node = stack[--top];
+            double m = nodeMass[node];
+            if( m == 0 ) {
+                continue;
+            }
+            int child = nodeChild[node];
+            if( child < 0 ) {
+                // Leaf so sum the wells directly
+                for( int k = nodeFirst[node], last = k + nodeSize[node]; k < last; k++ ) {
+                    int w = order[k];
+                    int i = w * 3;
+                    double dx = wellPos[i] - x;
+                    double dy = wellPos[i + 1] - y;
+                    double dz = wellPos[i + 2] - z;
+                    double r2 = dx * dx + dy * dy + dz * dz + wellSoftSq[w];
+                    if( r2 == 0 ) {
+                        continue;
+                    }
+                    double s = wellMass[w] / (r2 * Math.sqrt(r2));
+                    ax += dx * s;
+                    ay += dy * s;
+                    az += dz * s;
+                }
+                continue;
+            }
+            
+            int i = node * 3;
+            double dx = nodeCom[i] - x;
+            double dy = nodeCom[i + 1] - y;
+            double dz = nodeCom[i + 2] - z;
+            double distSq = dx * dx + dy * dy + dz * dz;
+            double size = nodeHalf[node] * 2;
+            if( size * size < thetaSq * distSq ) {
+                // Far enough away to treat as one point mass
+                double r2 = distSq + nodeSoftSq[node];
+                double s = m / (r2 * Math.sqrt(r2));
+                ax += dx * s;
+                ay += dy * s;
+                az += dz * s;
+                continue;
+            }
+            for( int o = 0; o < 8; o++ ) {
+                stack[top++] = child + o;
+            }
+        }
+        out[offset] += ax * strength;
+        out[offset + 1] += ay * strength;
+        out[offset + 2] += az * strength;
+    }
+ 
+    /**
+     *  Adds the exact acceleration at the specified location to 
+     *  out[offset], out[offset + 1], and out[offset + 2] by summing every
+     *  well.  This doesn't use the octree so doesn't need build().
+     */   
+    public void accumulateNaive( double x, double y, double z, double[] out, int offset ) {
+        double ax = 0;
+        double ay = 0;
+        double az = 0;
+        for( int w = 0; w < wellCount; w++ ) {
+            int i = w * 3;
+            double dx = wellPos[i] - x;
+            double dy = wellPos[i + 1] - y;
+            double dz = wellPos[i + 2] - z;
+            double r2 = dx * dx + dy * dy + dz * dz + wellSoftSq[w];
+            if( r2 == 0 ) {
+                continue;
+            }
+            double s = wellMass[w] / (r2 * Math.sqrt(r2));
+            ax += dx * s;
+            ay += dy * s;
+            az += dz * s;
+        }
+        out[offset] += ax * strength;
+        out[offset + 1] += ay * strength;
+        out[offset + 2] += az * strength;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.gravity;
+
+import com.simsilica.es.Entity;
+import com.simsilica.es.EntityContainer;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.filter.FieldFilter;
+import com.simsilica.mathd.Vec3d;
+import com.simsilica.sim.AbstractGameSystem;
+import com.simsilica.sim.SimTime;
+import com.waffleware.example.entity.data.ObjectType;
+import com.waffleware.example.entity.data.Position;
+import com.waffleware.example.entity.data.SphereShape;
+import com.waffleware.example.logic.BodyStore;
+import com.waffleware.example.logic.ForceGenerator;
+import com.waffleware.example.logic.SimplePhysics;
+import com.waffleware.example.logic.utils.ObjectTypes;
+
+/**
+ *  Turns the gravSphere entities into static gravity wells that pull
+ *  on every body with mass.  The wells are kept in a GravityField whose
+ *  octree is rebuilt whenever the set of gravSpheres changes and the
+ *  resulting acceleration is accumulated into the bodies at the start of
+ *  each physics step.
+ *
+ *  @author    Paul Speed
+ */
+public class GravitySystem extends AbstractGameSystem
+  implements ForceGenerator
+{
+    private EntityData ed;
+    private SimplePhysics physics;
+    private WellContainer wells;
+    private GravityField field;
+ 
+    public GravitySystem() {
+        this(new GravityField());
+    }
+    
+    public GravitySystem( GravityField field ) {
+        this.field = field;
+    }
+ 
+    public GravityField getField() {
+        return field;
+    }
+ 
+    @Override
+    protected void initialize() {
+        this.ed = getSystem(EntityData.class);
+        if( ed == null ) {
+            throw new RuntimeException("GravitySystem requires an EntityData object.");
+        }
+        this.physics = getSystem(SimplePhysics.class);
+        if( physics == null ) {
+            throw new RuntimeException("GravitySystem requires a SimplePhysics system.");
+        }
+        physics.addForceGenerator(this);
+    }
+    
+    @Override
+    protected void terminate() {
+        physics.removeForceGenerator(this);
+    }
+ 
+    @Override
+    public void start() {
+        wells = new WellContainer(ed);
+        wells.start();
+        rebuild();
+    }
+ 
+    @Override
+    public void update( SimTime time ) {
+        if( wells.update() ) {
+            rebuild();
+        }
+    }
+ 
+    @Override
+    public void stop() {
+        wells.stop();
+        wells = null;
+        field.clear();
+        field.build();
+    }
+ 
+    protected void rebuild() {
+        field.clear();
+        for( Well well : wells.getArray() ) {
+            field.addWell(well.pos.x, well.pos.y, well.pos.z, well.radius);
+        }
+        field.build();
+    }
+ 
+    @Override
+    public void applyForces( BodyStore store, double stepTime, int start, int end ) {
+        double[] pos = store.getPositionArray();
+        double[] acc = store.getAccelerationArray();
+        double[] invMass = store.getInverseMassArray();
+        for( int slot = start; slot < end; slot++ ) {
+            if( invMass[slot] == 0 ) {
+                // Immovable
+                continue;
+            }
+            int i = slot * 3;
+            field.accumulate(pos[i], pos[i + 1], pos[i + 2], acc, i);
+        }
+    }
+ 
+    private static class Well {
+        Vec3d pos;
+        double radius;
+    }
+ 
+    /**
+     *  Tracks the position and size of all of the gravSphere entities.
+     */
+    private class WellContainer extends EntityContainer<Well> {
+ 
+        public WellContainer( EntityData ed ) {
+            super(ed, FieldFilter.create(ObjectType.class, "type", 
+                                         ObjectTypes.gravSphereType(ed).getType()),
+                  ObjectType.class, Position.class, SphereShape.class);
+        }
+ 
+        @Override     
+        protected Well[] getArray() {
+            return super.getArray();
+        }
+ 
+        @Override     
+        protected Well addObject( Entity e ) {
+            Well result = new Well();
+            updateObject(result, e);
+            return result;
+        }
+    
+        @Override     
+        protected void updateObject( Well object, Entity e ) {
+            object.pos = e.get(Position.class).getLocation();
+            object.radius = e.get(SphereShape.class).getRadius();
+        }
+    
+        @Override     
+        protected void removeObject( Well object, Entity e ) {
+        }    
+    }
+}
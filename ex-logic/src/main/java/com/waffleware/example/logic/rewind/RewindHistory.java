@@ -0,0 +1,319 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.rewind;
+
+import java.util.Arrays;
+
+/**
+ *  A ring of per-frame snapshots of body positions that can be searched
+ *  spatially, for resolving things like shots against the world as a
+ *  lagging client saw it.  Each snapshot keeps the entity IDs, positions,
+ *  and radii of every body in primitive arrays sorted by a hash of the 
+ *  grid cell containing the body's center.  A radius query only has to 
+ *  binary search the handful of cells that the query sphere touches instead
+ *  of looking at every body.  Queries that would touch more cells than the
+ *  frame has bodies just check every body instead.
+ *
+ *  Snapshot slots are reused as the ring wraps and their arrays only grow,
+ *  so once the body count settles recording doesn't create garbage.  This
+ *  is not thread safe.  Record and query from the same thread.
+ *
+ *  @author    Paul Speed
+ */
+public class RewindHistory {
+
+    private final double cellSize;
+    private final Frame[] frames;
+    private long count;
+    private Frame recording;
+    
+    // The distinct cell hashes for the current query
+    private int[] queryHashes = new int[64];
+    
+    public RewindHistory( int depth, double cellSize ) {
+        this.cellSize = cellSize;
+        this.frames = new Frame[Math.max(1, depth)];
+        for( int i = 0; i < frames.length; i++ ) {
+            frames[i] = new Frame();
+        }
+    }
+ 
+    /**
+     *  Returns the maximum number of frames kept.
+     */   
+    public int getDepth() {
+        return frames.length;
+    }
+    
+    public double getCellSize() {
+        return cellSize;
+    }
+ 
+    /**
+     *  Returns the number of complete frames available.
+     */   
+    public int size() {
+        return (int)Math.min(count, frames.length);
+    }
+ 
+    /**
+     *  Returns the time of the oldest frame available or Long.MIN_VALUE if
+     *  there are none.
+     */   
+    public long getOldestTime() {
+        if( count == 0 ) {
+            return Long.MIN_VALUE;
+        }
+        return frames[(int)(Math.max(0, count - frames.length) % frames.length)].time;
+    }
+    
+    public long getNewestTime() {
+        if( count == 0 ) {
+            return Long.MIN_VALUE;
+        }
+        return frames[(int)((count - 1) % frames.length)].time;
+    }
+ 
+    /**
+     *  Starts recording a new frame, overwriting the oldest one if the
+     *  history is full.  The expected count is just a sizing hint.
+     */   
+    public void beginFrame( long time, int expectedCount ) {
+        recording = frames[(int)(count % frames.length)];
+        recording.begin(time, expectedCount);
+    }
+ 
+    /**
+     *  Adds a body to the frame being recorded.
+     */   
+    public void add( long id, double x, double y, double z, double radius ) {
+        recording.add(id, x, y, z, radius, cellHash(x, y, z));
+    }
+ 
+    /**
+     *  Finishes the frame being recorded, building its spatial index, and
+     *  makes it available for queries.
+     */   
+    public void endFrame() {
+        recording.sort();
+        recording = null;
+        count++;
+    }
+ 
+    public void clear() {
+        count = 0;
+        recording = null;
+    }
+ 
+    /**
+     *  Finds all of the bodies that overlapped the sphere at (x, y, z) with 
+     *  the specified radius in the recorded frame closest to the specified time.  
+     *  A body overlaps if the distance to its center is less than the query 
+     *  radius plus its own radius.  The results replace the contents of 'hits'.  
+     *  Returns the number of bodies found, or -1 if there are no frames.
+     */
+    public int query( long time, double x, double y, double z, double radius, RewindHits hits ) {
+        hits.reset();
+        Frame frame = findFrame(time);
+        if( frame == null ) {
+            return -1;
+        }
+        hits.setFrameTime(frame.time);
+        
+        // The bodies are binned by their centers so the cells have to cover
+        // the biggest body's radius, too
+        double reach = radius + frame.maxRadius;
+        int x0 = toCell(x - reach);
+        int y0 = toCell(y - reach);
+        int z0 = toCell(z - reach);
+        int x1 = toCell(x + reach);
+        int y1 = toCell(y + reach);
+        int z1 = toCell(z + reach);
+        
+        // As a double since a big enough query could overflow a long
+        double cells = ((double)x1 - x0 + 1) * ((double)y1 - y0 + 1) * ((double)z1 - z0 + 1);
+        if( cells > frame.size ) {
+            // Cheaper to look at every body than to search that many cells
+            frame.collectAll(x, y, z, radius, hits);
+            return hits.size();
+        }
+        
+        // Different cells can share a hash and each hash must only be
+        // searched once or its bodies would be found twice
+        int n = 0;
+        if( queryHashes.length < cells ) {
+            queryHashes = new int[Math.max(frame.size, queryHashes.length * 2)];
+        }
+        for( int cx = x0; cx <= x1; cx++ ) {
+            for( int cy = y0; cy <= y1; cy++ ) {
+                for( int cz = z0; cz <= z1; cz++ ) {
+                    queryHashes[n++] = hash(cx, cy, cz);
+                }
+            }
+        }
+        Arrays.sort(queryHashes, 0, n);
+        for( int i = 0; i < n; i++ ) {
+            if( i == 0 || queryHashes[i] != queryHashes[i - 1] ) {
+                frame.collect(queryHashes[i], x, y, z, radius, hits);
+            }
+        }
+        return hits.size();
+    }
+ 
+    /**
+     *  Returns the frame closest in time to the specified time, or null
+     *  if there are no frames.
+     */   
+    protected Frame findFrame( long time ) {
+        if( count == 0 ) {
+            return null;
+        }
+        Frame best = null;
+        long bestDelta = Long.MAX_VALUE;
+        for( long i = count - 1, first = Math.max(0, count - frames.length); i >= first; i-- ) {
+            Frame f = frames[(int)(i % frames.length)];
+            long delta = Math.abs(f.time - time);
+            if( delta > bestDelta ) {
+                // Frames only get farther away from here
+                break;
+            }
+            best = f;
+            bestDelta = delta;
+        }
+        return best;
+    }
+ 
+    private int toCell( double d ) {
+        return (int)Math.floor(d / cellSize);
+    }
+    
+    private int cellHash( double x, double y, double z ) {
+        return hash(toCell(x), toCell(y), toCell(z));
+    }
+    
+    private static int hash( int x, int y, int z ) {
+        int h = x * 0x8da6b343 + y * 0xd8163841 + z * 0xcb1ab31f;
+        return h ^ (h >>> 16);
+    }
+ 
+    /**
+     *  One recorded frame.  The body data is kept in its original order and
+     *  'sorted' holds (cell hash << 32 | index) so that the bodies for a
+     *  cell can be found with a binary search.
+     */
+    protected static class Frame {
+        long time;
+        int size;
+        long[] ids = new long[16];
+        double[] pos = new double[16 * 3];
+        double[] radius = new double[16];
+        long[] sorted = new long[16];
+        double maxRadius;
+ 
+        void begin( long time, int expectedCount ) {
+            this.time = time;
+            this.size = 0;
+            this.maxRadius = 0;
+            ensureCapacity(expectedCount);
+        }
+ 
+        void ensureCapacity( int capacity ) {
+            if( capacity <= ids.length ) {
+                return;
+            }
+            capacity = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            pos = Arrays.copyOf(pos, capacity * 3);
+            radius = Arrays.copyOf(radius, capacity);
+            sorted = Arrays.copyOf(sorted, capacity);
+        }
+ 
+        void add( long id, double x, double y, double z, double r, int hash ) {
+            ensureCapacity(size + 1);
+            int i = size++;
+            ids[i] = id;
+            pos[i * 3] = x;
+            pos[i * 3 + 1] = y;
+            pos[i * 3 + 2] = z;
+            radius[i] = r;
+            sorted[i] = ((long)hash << 32) | i;
+            maxRadius = Math.max(maxRadius, r);
+        }
+ 
+        void sort() {
+            Arrays.sort(sorted, 0, size);
+        }
+ 
+        void collect( int hash, double x, double y, double z, double r, RewindHits hits ) {
+            long low = (long)hash << 32;
+            long high = low | 0xffffffffL;
+            
+            // Find the first entry for the cell
+            int lo = 0;
+            int hi = size;
+            while( lo < hi ) {
+                int mid = (lo + hi) >>> 1;
+                if( sorted[mid] < low ) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for( int n = lo; n < size && sorted[n] <= high; n++ ) {
+                check((int)sorted[n], x, y, z, r, hits);
+            }
+        }
+ 
+        void collectAll( double x, double y, double z, double r, RewindHits hits ) {
+            for( int i = 0; i < size; i++ ) {
+                check(i, x, y, z, r, hits);
+            }
+        }
+ 
+        private void check( int i, double x, double y, double z, double r, RewindHits hits ) {
+            int p = i * 3;
+            double dx = pos[p] - x;
+            double dy = pos[p + 1] - y;
+            double dz = pos[p + 2] - z;
+            double reach = r + radius[i];
+            double distSq = dx * dx + dy * dy + dz * dz; 
+            if( distSq <= reach * reach ) {
+                hits.add(ids[i], pos[p], pos[p + 1], pos[p + 2], Math.sqrt(distSq));
+            }
+        }
+    }
+}
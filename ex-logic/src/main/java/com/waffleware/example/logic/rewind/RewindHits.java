@@ -0,0 +1,121 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.rewind;
+
+import com.simsilica.es.EntityId;
+import com.simsilica.mathd.Vec3d;
+
+import java.util.Arrays;
+
+/**
+ *  Reusable results of a RewindHistory query: the ID, position, and
+ *  center distance of each body that was found.  Hits are in no
+ *  particular order.
+ *
+ *  @author    Paul Speed
+ */
+public class RewindHits {
+
+    private long frameTime;
+    private int size;
+    private long[] ids = new long[16];
+    private double[] pos = new double[16 * 3];
+    private double[] distance = new double[16];
+    
+    public RewindHits() {
+    }
+ 
+    public int size() {
+        return size;
+    }
+ 
+    /**
+     *  Returns the time of the recorded frame that was actually searched.
+     */   
+    public long getFrameTime() {
+        return frameTime;
+    }
+ 
+    public long getId( int index ) {
+        return ids[index];
+    }
+ 
+    public EntityId getEntityId( int index ) {
+        return new EntityId(ids[index]);
+    }
+ 
+    public Vec3d getPosition( int index, Vec3d result ) {
+        int p = index * 3;
+        return result.set(pos[p], pos[p + 1], pos[p + 2]);
+    }
+ 
+    /**
+     *  Returns the distance from the query point to the body's center.
+     */   
+    public double getDistance( int index ) {
+        return distance[index];
+    }
+ 
+    void reset() {
+        size = 0;
+        frameTime = Long.MIN_VALUE;
+    }
+    
+    void setFrameTime( long frameTime ) {
+        this.frameTime = frameTime;
+    }
+ 
+    void add( long id, double x, double y, double z, double dist ) {
+        if( size == ids.length ) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            pos = Arrays.copyOf(pos, capacity * 3);
+            distance = Arrays.copyOf(distance, capacity);
+        }
+        int i = size++;
+        ids[i] = id;
+        pos[i * 3] = x;
+        pos[i * 3 + 1] = y;
+        pos[i * 3 + 2] = z;
+        distance[i] = dist;
+    }
+ 
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size + ", frameTime=" + frameTime + "]";
+    }
+}
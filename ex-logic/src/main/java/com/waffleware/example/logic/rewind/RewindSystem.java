@@ -0,0 +1,134 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.rewind;
+
+import com.simsilica.mathd.Vec3d;
+import com.simsilica.sim.AbstractGameSystem;
+import com.simsilica.sim.SimTime;
+import com.waffleware.example.logic.Body;
+import com.waffleware.example.logic.BodyStore;
+import com.waffleware.example.logic.PhysicsListener;
+import com.waffleware.example.logic.SimplePhysics;
+
+/**
+ *  Keeps a RewindHistory of every physics body so that other server
+ *  systems can ask where things were at some point in the recent past,
+ *  for example, to resolve a shot against the world as the shooter saw it
+ *  on their lagging client.  A snapshot of all bodies is recorded every
+ *  frame and the depth is the number of frames kept.
+ *
+ *  Times are in the same units as SimTime.getTime(), which is also what
+ *  BodyPosition frames use.  Queries should be made from the simulation
+ *  thread.
+ *
+ *  @author    Paul Speed
+ */
+public class RewindSystem extends AbstractGameSystem
+  implements PhysicsListener
+{
+    private final RewindHistory history;
+    private SimplePhysics physics;
+    private SimTime time;
+    
+    public RewindSystem( int depth, double cellSize ) {
+        this.history = new RewindHistory(depth, cellSize);
+    }
+ 
+    public RewindHistory getHistory() {
+        return history;
+    }
+ 
+    /**
+     *  Finds the bodies that overlapped the specified sphere in the
+     *  recorded frame closest to the specified time.  See RewindHistory.query().
+     */   
+    public int query( long time, Vec3d center, double radius, RewindHits hits ) {
+        return history.query(time, center.x, center.y, center.z, radius, hits);
+    }
+ 
+    @Override
+    protected void initialize() {
+        this.physics = getSystem(SimplePhysics.class);
+        
+        // We want a full snapshot every frame and not just the bodies that moved
+        physics.addPhysicsListener(this, false);
+    }
+    
+    @Override
+    protected void terminate() {
+        physics.removePhysicsListener(this);
+        history.clear();
+    }
+ 
+    @Override
+    public void beginFrame( SimTime time ) {
+        this.time = time;
+    }
+ 
+    @Override
+    public void addBody( Body body ) {
+    }
+ 
+    @Override
+    public void updateBody( Body body ) {
+        // Everything is done in updateBodies()
+    }
+ 
+    @Override
+    public void updateBodies( Body[] bodies, int count ) {
+        BodyStore store = physics.getBodyStore();
+        double[] pos = store.getPositionArray();
+        double[] radius = store.getRadiusArray();
+        
+        history.beginFrame(time.getTime(), count);
+        for( int i = 0; i < count; i++ ) {
+            Body body = bodies[i];
+            int p = body.getSlot() * 3;
+            history.add(body.getBodyId().getId(), pos[p], pos[p + 1], pos[p + 2], 
+                        radius[body.getSlot()]);
+        }
+        history.endFrame();
+    }
+ 
+    @Override
+    public void removeBody( Body body ) {
+    }
+ 
+    @Override
+    public void endFrame( SimTime time ) {
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.stats;
+
+import java.util.Arrays;
+
+/**
+ *  A fixed-size log-linear histogram of non-negative long values, in the 
+ *  spirit of HdrHistogram.  Every power of two range is split into 32
+ *  linear sub-buckets so recorded values keep about 3% relative precision
+ *  across the whole long range with a fixed ~15k of counts and recording
+ *  never allocates.
+ *
+ *  This is not thread safe.  Values should be recorded from one thread and
+ *  other threads should only look at copies made with copyInto().
+ *
+ *  @author    Paul Speed
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+ 
+    public Histogram() {
+    }
+ 
+    /**
+     *  Records a value.  Negative values are recorded as 0.
+     */   
+    public void record( long value ) {
+        if( value < 0 ) {
+            value = 0;
+        }
+        counts[bucket(value)]++;
+        count++;
+        total += value;
+        if( value < min ) {
+            min = value;
+        }
+        if( value > max ) {
+            max = value;
+        }
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public double getMean() {
+        return count == 0 ? 0 : (double)total / count;
+    }
+ 
+    /**
+     *  Returns the value at the specified percentile, 0 to 100.  The result 
+     *  is the highest value that falls in the same bucket as the actual 
+     *  percentile value so it may overstate it by the bucket precision but 
+     *  never more than the max.
+     */   
+    public long getPercentile( double percentile ) {
+        if( count == 0 ) {
+            return 0;
+        }
+        long target = (long)Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+        target = Math.max(1, target);
+        long seen = 0;
+        for( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += counts[i];
+            if( seen >= target ) {
+                return Math.min(max, highestValue(i));
+            }
+        }
+        return max;
+    }
+ 
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+ 
+    /**
+     *  Adds all of the values recorded in the other histogram to this one.
+     */   
+    public void add( Histogram other ) {
+        for( int i = 0; i < BUCKET_COUNT; i++ ) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+ 
+    /**
+     *  Overwrites the target with the contents of this histogram.
+     */   
+    public Histogram copyInto( Histogram target ) {
+        System.arraycopy(counts, 0, target.counts, 0, BUCKET_COUNT);
+        target.count = count;
+        target.total = total;
+        target.min = min;
+        target.max = max;
+        return target;
+    }
+ 
+    private static int bucket( long value ) {
+        if( value < SUB_COUNT ) {
+            return (int)value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+    
+    private static long highestValue( int bucket ) {
+        if( bucket < SUB_COUNT ) {
+            return bucket;
+        }
+        int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        long low = (long)(SUB_COUNT + sub) << (exp - SUB_BITS);
+        long width = 1L << (exp - SUB_BITS);
+        return low + width - 1;
+    }
+}
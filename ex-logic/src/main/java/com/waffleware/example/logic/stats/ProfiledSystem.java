@@ -0,0 +1,99 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.stats;
+
+import com.simsilica.sim.GameSystem;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+
+/**
+ *  Wraps a GameSystem to time its update() calls.  Since the wrapper
+ *  is what gets added to the GameSystemManager, this should only be used
+ *  for systems added with addSystem() that nothing looks up by type.
+ *
+ *  @author    Paul Speed
+ */
+public class ProfiledSystem implements GameSystem {
+
+    private final GameSystem delegate;
+    private final TickProfiler.Timer timer;
+ 
+    public ProfiledSystem( GameSystem delegate, TickProfiler profiler ) {
+        this(delegate, profiler.getTimer(delegate.getClass().getSimpleName()));
+    }
+    
+    public ProfiledSystem( GameSystem delegate, TickProfiler.Timer timer ) {
+        this.delegate = delegate;
+        this.timer = timer;
+    }
+    
+    public GameSystem getDelegate() {
+        return delegate;
+    }
+ 
+    @Override
+    public void initialize( GameSystemManager systems ) {
+        delegate.initialize(systems);
+    }
+ 
+    @Override
+    public void start() {
+        delegate.start();
+    }
+ 
+    @Override
+    public void update( SimTime time ) {
+        long start = System.nanoTime();
+        delegate.update(time);
+        timer.record(System.nanoTime() - start);
+    }
+ 
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+ 
+    @Override
+    public void terminate( GameSystemManager systems ) {
+        delegate.terminate(systems);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+}
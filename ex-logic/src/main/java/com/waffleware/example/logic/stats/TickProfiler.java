@@ -0,0 +1,214 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.stats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  Collects per-phase timings for the simulation tick.  Each named
+ *  Timer keeps a Histogram of nanosecond durations for the current window 
+ *  of ticks and the last complete window so that reports always cover 
+ *  recent behavior instead of everything since startup.  The whole tick 
+ *  is recorded with recordTick() which also counts the ticks that ran 
+ *  over the tick budget and rolls the windows.
+ *
+ *  Timings are recorded from the simulation thread.  Reports can be
+ *  generated from any thread but are taken from the last complete window, 
+ *  or a rough copy of the current window if there isn't one yet.
+ *
+ *  @author    Paul Speed
+ */
+public class TickProfiler {
+ 
+    public static final String TICK = "tick";
+ 
+    private final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private final Map<String, Timer> index = new ConcurrentHashMap<>();
+    private final Timer tick;
+    
+    private long tickBudget;
+    private int windowTicks;
+    private int ticks;
+    private long windowOverruns;
+    private volatile long lastWindowOverruns;
+    private volatile long totalOverruns;
+    
+    /**
+     *  Creates a profiler that will count ticks longer than tickBudget
+     *  nanoseconds as overruns and rolls its histograms every windowTicks
+     *  ticks.
+     */
+    public TickProfiler( long tickBudget, int windowTicks ) {
+        this.tickBudget = tickBudget;
+        this.windowTicks = Math.max(1, windowTicks);
+        this.tick = getTimer(TICK);
+    }
+ 
+    public void setTickBudget( long tickBudget ) {
+        this.tickBudget = tickBudget;
+    }
+    
+    public long getTickBudget() {
+        return tickBudget;
+    }
+    
+    public int getWindowTicks() {
+        return windowTicks;
+    }
+ 
+    /**
+     *  Returns the timer with the specified name, creating it if necessary.
+     *  Timers are reported in the order they were created.
+     */   
+    public Timer getTimer( String name ) {
+        Timer result = index.get(name);
+        if( result == null ) {
+            synchronized(this) {
+                result = index.get(name);
+                if( result == null ) {
+                    result = new Timer(name);
+                    timers.add(result);
+                    index.put(name, result);
+                }
+            }
+        }
+        return result;
+    }
+ 
+    public List<Timer> getTimers() {
+        return timers;
+    }
+ 
+    /**
+     *  Records the duration of a whole tick in nanoseconds.  This also 
+     *  marks the end of the tick for the purposes of rolling the windows.
+     */   
+    public void recordTick( long nanos ) {
+        tick.record(nanos);
+        if( nanos > tickBudget ) {
+            windowOverruns++;
+            totalOverruns++;
+        }
+        if( ++ticks >= windowTicks ) {
+            for( Timer t : timers ) {
+                t.rotate();
+            }
+            lastWindowOverruns = windowOverruns;
+            windowOverruns = 0;
+            ticks = 0;
+        }
+    }
+ 
+    /**
+     *  Returns the number of ticks that went over budget in the last 
+     *  complete window.
+     */   
+    public long getLastWindowOverruns() {
+        return lastWindowOverruns;
+    }
+    
+    public long getTotalOverruns() {
+        return totalOverruns;
+    }
+ 
+    /**
+     *  Returns a human readable table of the p50/p99/max times of every
+     *  timer in milliseconds.
+     */   
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Tick profile, %d tick windows, budget %.2f ms, overruns %d last window / %d total%n",
+                                windowTicks, tickBudget / 1000000.0, lastWindowOverruns, totalOverruns));
+        sb.append(String.format("%-40s %8s %10s %10s %10s%n", "phase", "count", "p50 ms", "p99 ms", "max ms"));
+        Histogram h = new Histogram();
+        for( Timer t : timers ) {
+            t.snapshot(h);
+            sb.append(String.format("%-40s %8d %10.3f %10.3f %10.3f%n", t.getName(), h.getCount(),
+                                    h.getPercentile(50) / 1000000.0, 
+                                    h.getPercentile(99) / 1000000.0, 
+                                    h.getMax() / 1000000.0));
+        }
+        return sb.toString();
+    }
+ 
+    /**
+     *  A named duration histogram.
+     */
+    public static class Timer {
+        private final String name;
+        private final Histogram current = new Histogram();
+        private final Histogram last = new Histogram();
+        private boolean hasLast;
+        
+        protected Timer( String name ) {
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+ 
+        /**
+         *  Records a duration in nanoseconds.  Simulation thread only.
+         */       
+        public void record( long nanos ) {
+            current.record(nanos);
+        }
+ 
+        protected synchronized void rotate() {
+            current.copyInto(last);
+            current.reset();
+            hasLast = true;
+        }
+ 
+        /**
+         *  Copies the last complete window into the specified histogram
+         *  and returns it.
+         */       
+        public synchronized Histogram snapshot( Histogram target ) {
+            return hasLast ? last.copyInto(target) : current.copyInto(target);
+        }
+        
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + name + "]";
+        }
+    }
+}
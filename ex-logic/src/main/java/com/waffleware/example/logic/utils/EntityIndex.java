@@ -0,0 +1,245 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.logic.utils;
+
+import com.simsilica.es.EntityId;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  An open-addressing hash map from EntityId (by its raw long ID) to
+ *  a value.  It is meant for indexes that are looked up a lot from
+ *  many threads but only ever modified by one thread, usually the
+ *  simulation thread.  Keys are never boxed and lookups never lock or
+ *  allocate.
+ *
+ *  Mutations write the value before the key and readers read the key,
+ *  then the value, then the key again, so a reader can never return a
+ *  value that belongs to some other key.  Removed entries leave a tombstone
+ *  behind that is cleaned up the next time the table is rehashed.  Rehashing 
+ *  builds a complete new table before swapping it in so readers that are 
+ *  still probing the old one just see the state from before the rehash.
+ *
+ *  Only one thread may call put() or remove() at a time.
+ *
+ *  @author    Paul Speed
+ */
+public class EntityIndex<V> {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long TOMBSTONE = Long.MIN_VALUE + 1;
+
+    private volatile Table<V> table;
+    
+    // Only touched by the writer
+    private int size;
+    private int used;
+
+    public EntityIndex() {
+        this(64);
+    }
+    
+    public EntityIndex( int initialCapacity ) {
+        int capacity = 16;
+        while( capacity < initialCapacity * 2 ) {
+            capacity <<= 1;
+        }
+        this.table = new Table<>(capacity);
+    }
+
+    /**
+     *  Returns the number of entries in the index.  Only accurate when
+     *  called from the writing thread.
+     */
+    public int size() {
+        return size;
+    }
+ 
+    public V get( EntityId id ) {
+        return get(id.getId());
+    }
+    
+    public V get( long key ) {
+        Table<V> t = table;
+        int mask = t.mask;
+        for( int i = hash(key) & mask; ; i = (i + 1) & mask ) {
+            long k = t.keys.get(i);
+            if( k == EMPTY ) {
+                return null;
+            }
+            if( k == key ) {
+                V value = t.values.get(i);
+                if( t.keys.get(i) == key ) {
+                    return value;
+                }
+                // The slot was recycled out from under us so start over
+                return get(key);
+            }
+        }
+    }
+ 
+    public boolean containsKey( long key ) {
+        return get(key) != null;
+    }
+ 
+    public V put( EntityId id, V value ) {
+        return put(id.getId(), value);
+    }
+ 
+    /**
+     *  Sets the value for the specified key and returns the previous
+     *  value, if any.  Null values are not allowed, use remove() instead.
+     */   
+    public V put( long key, V value ) {
+        if( key == EMPTY || key == TOMBSTONE ) {
+            throw new IllegalArgumentException("Reserved key:" + key);
+        }
+        if( value == null ) {
+            throw new IllegalArgumentException("Null values are not allowed");
+        }
+        Table<V> t = table;
+        int mask = t.mask;
+        int free = -1;
+        for( int i = hash(key) & mask; ; i = (i + 1) & mask ) {
+            long k = t.keys.get(i);
+            if( k == key ) {
+                V old = t.values.get(i);
+                t.values.set(i, value);
+                return old;
+            }
+            if( k == TOMBSTONE ) {
+                if( free < 0 ) {
+                    free = i;
+                }
+                continue;
+            }
+            if( k == EMPTY ) {
+                if( free < 0 ) {
+                    free = i;
+                    used++;
+                }
+                break;
+            }
+        }
+        
+        // Value first so that readers that find the key will find the value
+        t.values.set(free, value);
+        t.keys.set(free, key);
+        size++;
+        
+        if( used * 2 > t.keys.length() ) {
+            rehash(size * 4 > t.keys.length() ? t.keys.length() * 2 : t.keys.length());
+        }
+        return null;
+    }
+ 
+    public V remove( EntityId id ) {
+        return remove(id.getId());
+    }
+    
+    public V remove( long key ) {
+        Table<V> t = table;
+        int mask = t.mask;
+        for( int i = hash(key) & mask; ; i = (i + 1) & mask ) {
+            long k = t.keys.get(i);
+            if( k == EMPTY ) {
+                return null;
+            }
+            if( k == key ) {
+                V old = t.values.get(i);
+                t.keys.set(i, TOMBSTONE);
+                t.values.set(i, null);
+                size--;
+                return old;
+            }
+        }
+    }
+ 
+    /**
+     *  Removes all entries.
+     */   
+    public void clear() {
+        table = new Table<>(table.keys.length());
+        size = 0;
+        used = 0;
+    }
+ 
+    private void rehash( int capacity ) {
+        Table<V> old = table;
+        Table<V> t = new Table<>(capacity);
+        int mask = t.mask;
+        for( int n = 0; n < old.keys.length(); n++ ) {
+            long key = old.keys.get(n);
+            if( key == EMPTY || key == TOMBSTONE ) {
+                continue;
+            }
+            int i = hash(key) & mask;
+            while( t.keys.get(i) != EMPTY ) {
+                i = (i + 1) & mask;
+            }
+            t.values.set(i, old.values.get(n));
+            t.keys.set(i, key);
+        }
+        used = size;
+        table = t;
+    }
+ 
+    private static int hash( long key ) {
+        // Murmur3 finalizer, entity IDs are sequential so they need 
+        // some mixing
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+ 
+    private static class Table<V> {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+        
+        public Table( int capacity ) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            for( int i = 0; i < capacity; i++ ) {
+                keys.lazySet(i, EMPTY);
+            }
+        }
+    }
+}
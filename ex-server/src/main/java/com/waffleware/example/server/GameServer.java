@@ -36,13 +36,11 @@
 
 package com.waffleware.example.server;
 
+import com.jme3.network.ConnectionListener;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.Network;
 import com.jme3.network.Server;
 import com.jme3.network.serializing.Serializer;
-import com.jme3.network.serializing.serializers.FieldSerializer;
-import com.jme3.network.service.AbstractHostedService;
-import com.jme3.network.service.HostedServiceManager;
 import com.jme3.network.service.rmi.RmiHostedService;
 import com.jme3.network.service.rpc.RpcHostedService;
 import com.simsilica.es.EntityData;
@@ -55,6 +53,11 @@ import com.simsilica.ethereal.NetworkStateListener;
 import com.simsilica.sim.GameLoop;
 import com.simsilica.sim.GameSystemManager;
 import com.waffleware.example.common.remote.GameConstants;
+import com.waffleware.example.common.remote.serializers.BodyPositionSerializer;
+import com.waffleware.example.common.remote.serializers.NameSerializer;
+import com.waffleware.example.common.remote.serializers.ObjectTypeSerializer;
+import com.waffleware.example.common.remote.serializers.PositionSerializer;
+import com.waffleware.example.common.remote.serializers.SphereShapeSerializer;
 import com.waffleware.example.entity.data.BodyPosition;
 import com.waffleware.example.entity.data.ObjectType;
 import com.waffleware.example.entity.data.Position;
@@ -62,14 +65,27 @@ import com.waffleware.example.entity.data.SphereShape;
 import com.waffleware.example.logic.BasicEnvironment;
 import com.waffleware.example.logic.BodyPositionPublisher;
 import com.waffleware.example.logic.SimplePhysics;
+import com.waffleware.example.logic.collision.CollisionSystem;
+import com.waffleware.example.logic.gravity.GravitySystem;
+import com.waffleware.example.logic.rewind.RewindSystem;
+import com.waffleware.example.logic.stats.ProfiledSystem;
+import com.waffleware.example.logic.stats.ProfiledSystemManager;
+import com.waffleware.example.logic.stats.TickProfiler;
+import com.waffleware.example.server.metrics.Counter;
+import com.waffleware.example.server.metrics.MetricsHttpServer;
+import com.waffleware.example.server.metrics.MetricsMBean;
+import com.waffleware.example.server.metrics.MetricsRegistry;
 import com.waffleware.example.server.services.AccountHostedService;
 import com.waffleware.example.server.services.ChatHostedService;
 import com.waffleware.example.server.services.GameSessionHostedService;
+import com.waffleware.example.server.services.HandshakeHostedService;
+import com.waffleware.example.server.systems.ViewerRegistry;
 import com.waffleware.example.server.systems.ZoneNetworkSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import javax.management.JMException;
 
 // To test something
 
@@ -83,10 +99,16 @@ public class GameServer
 {
 
     static Logger log = LoggerFactory.getLogger(GameServer.class);
+ 
+    public static final int DEFAULT_METRICS_PORT = 4280;
     
     private Server            server;
     private GameSystemManager systems;
     private GameLoop          loop;
+    private TickProfiler      profiler;
+    private MetricsRegistry   metrics = new MetricsRegistry();
+    private MetricsMBean      metricsBean;
+    private MetricsHttpServer metricsServer;
     
     private String description;
     
@@ -96,7 +118,11 @@ public class GameServer
         // Make sure we are running with a fresh serializer registry
         Serializer.initialize();
 
-        this.systems = new GameSystemManager();
+        // Time every tick against a 60 FPS budget and keep about 10 seconds
+        // worth of ticks in each profiling window
+        this.profiler = new TickProfiler(1000000000L / 60, 600);
+        this.systems = new ProfiledSystemManager(profiler);
+        systems.register(TickProfiler.class, profiler);
         this.loop = new GameLoop(systems);
         
         // Create the SpiderMonkey server and setup our standard
@@ -112,19 +138,12 @@ public class GameServer
         // And a separate channel for ES stuff
         server.addChannel(port + 2);
         
-        // Do some rearranging of the service ordering because we want
-        // to add a delay to see if we can recreate an issue a user is
-        // seeing.        
-        //ServerSerializerRegistrationsService regSvc = server.getServices().getService(ServerSerializerRegistrationsService.class);        
-        //server.getServices().removeService(regSvc);
-        //server.getServices().addService(new DelayService());
-        //server.getServices().addService(regSvc);
-        
-        // Adding a delay for the connectionAdded right after the serializer registration
-        // service gets to run let's the client get a small break in the buffer that should
-        // generally prevent the RpcCall messages from coming too quickly and getting processed
-        // before the SerializerRegistrationMessage has had a chance to process.
-        server.getServices().addService(new DelayService());
+        // Hold back the account session, and so all of the RMI traffic
+        // after it, until the client reports that it has registered our
+        // serializers.  Otherwise the client can get RpcCall messages in the
+        // same read as the SerializerRegistrationsMessage and fail to read
+        // them because their classes are not registered yet.
+        server.getServices().addService(new HandshakeHostedService(AccountHostedService.class));
         
         server.getServices().addServices(new RpcHostedService(),
                                          new RmiHostedService(),
@@ -141,26 +160,49 @@ public class GameServer
         server.getServices().addService(ethereal);
         
         // Add the various game services to the GameSystemManager 
-        systems.register(SimplePhysics.class, new SimplePhysics());
+        SimplePhysics physics = new SimplePhysics();
+        
+        // Step physics at a fixed 60 Hz no matter how evenly the game loop
+        // manages to run.
+        physics.setFixedStep(1.0 / 60);
+        systems.register(SimplePhysics.class, physics);
+        
+        // Sphere overlap detection for the bodies.  The cells are an 8th of 
+        // a zone so that they line up with the zone grid but still only hold 
+        // a handful of ships each.
+        systems.register(CollisionSystem.class, new CollisionSystem(GameConstants.ZONE_SIZE / 8.0));
+        
+        // Let the gravSpheres pull on everything with mass
+        systems.register(GravitySystem.class, new GravitySystem());
+        
+        // Keep half a second of spatially indexed snapshots around so that 
+        // shots and the like can be resolved against what a lagging client
+        // actually saw.
+        systems.register(RewindSystem.class, new RewindSystem(30, GameConstants.ZONE_SIZE / 8.0));
         
         // Add any hosted services that require those systems to already
         // exist
  
+        // Keep track of where the players are viewing from so that far away
+        // objects can be sent less often
+        systems.register(ViewerRegistry.class, new ViewerRegistry());
+ 
         // Add a system that will forward physics changes to the Ethereal 
         // zone manager       
-        systems.addSystem(new ZoneNetworkSystem(ethereal.getZones()));
+        ZoneNetworkSystem zoneNetwork = new ZoneNetworkSystem(ethereal.getZones());
+        systems.addSystem(new ProfiledSystem(zoneNetwork, profiler));
  
         // Setup our entity data and the hosting service
         DefaultEntityData ed = new DefaultEntityData();
         server.getServices().addService(new EntityDataHostedService(GameConstants.ES_CHANNEL, ed));
         
         // Add it to the game systems so that we send updates properly
-        systems.addSystem(new EntityUpdater(server.getServices().getService(EntityDataHostedService.class)));
+        systems.addSystem(new ProfiledSystem(new EntityUpdater(server.getServices().getService(EntityDataHostedService.class)), profiler));
 
         // Add another publisher to post object updates to our server-side
         // BodyPosition components.  This will also make BodyPosition available
         // on the clients.
-        systems.addSystem(new BodyPositionPublisher());
+        systems.addSystem(new ProfiledSystem(new BodyPositionPublisher(), profiler));
 
         // Register some custom serializers
         registerSerializers();
@@ -169,25 +211,75 @@ public class GameServer
         systems.register(EntityData.class, ed);
  
         // Add a system for creating the basic "world" entities
-        systems.addSystem(new BasicEnvironment());
+        systems.addSystem(new ProfiledSystem(new BasicEnvironment(), profiler));
+ 
+        setupMetrics(ethereal, physics, zoneNetwork, ed);
         
         log.info("Initializing game systems...");
         // Initialize the game system manager to prepare to start later
         systems.initialize();        
     }
     
+    /**
+     *  Registers the standard server health metrics.  They are served over
+     *  JMX and as text from a local HTTP endpoint once the server is started.
+     */
+    protected void setupMetrics( EtherealHost ethereal, SimplePhysics physics, 
+                                 ZoneNetworkSystem zoneNetwork, DefaultEntityData ed ) {
+ 
+        metrics.gauge("connections", () -> server.getConnections().size());
+        HandshakeHostedService handshake = server.getServices().getService(HandshakeHostedService.class);
+        metrics.gauge("connections.pending", handshake::getPendingCount);
+        AccountHostedService accounts = server.getServices().getService(AccountHostedService.class);
+        metrics.gauge("logins.queued", accounts::getQueuedCount);
+        metrics.counter("logins.admitted", accounts::getAdmittedCount);
+        server.addConnectionListener(new ConnectionMetrics(ethereal));
+        
+        metrics.timer("tick.time", profiler.getTimer(TickProfiler.TICK), 1000000.0);
+        metrics.counter("tick.overruns", profiler::getTotalOverruns);
+        
+        metrics.gauge("physics.bodies", () -> physics.getBodyStore().size());
+        
+        metrics.gauge("zones.occupied", zoneNetwork::getOccupiedZoneCount);
+        metrics.counter("zones.updates.sent", zoneNetwork::getSentCount);
+        metrics.counter("zones.updates.skipped", zoneNetwork::getSkippedCount);
+        metrics.counter("zones.updates.throttled", zoneNetwork::getThrottledCount);
+ 
+        // Every component change goes through here no matter who made it       
+        Counter esChanges = metrics.counter("es.changes");
+        ed.addEntityComponentListener(change -> esChanges.increment());
+        
+        ChatHostedService chat = server.getServices().getService(ChatHostedService.class);
+        metrics.counter("chat.messages", chat::getMessageCount);
+        metrics.counter("chat.batches", chat::getBatchCount);
+        metrics.counter("chat.dropped", chat::getDroppedCount);
+        metrics.counter("chat.kicked", chat::getKickedCount);
+        metrics.counter("chat.rejected", chat::getRejectedCount);
+    }
+ 
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+    
     protected void registerSerializers() {
-        Serializer.registerClass(Name.class, new FieldSerializer());
+        // The components get compact hand-written serializers instead of
+        // FieldSerializer.  See ex-benchmarks SerializerBenchmark for the
+        // size and speed comparison.
+        Serializer.registerClass(Name.class, new NameSerializer());
         
-        Serializer.registerClass(BodyPosition.class, new FieldSerializer());
-        Serializer.registerClass(ObjectType.class, new FieldSerializer());
-        Serializer.registerClass(Position.class, new FieldSerializer());
-        Serializer.registerClass(SphereShape.class, new FieldSerializer());
+        Serializer.registerClass(BodyPosition.class, new BodyPositionSerializer());
+        Serializer.registerClass(ObjectType.class, new ObjectTypeSerializer());
+        Serializer.registerClass(Position.class, new PositionSerializer());
+        Serializer.registerClass(SphereShape.class, new SphereShapeSerializer());
     }      
     
     public Server getServer() {
         return server;
     }
+ 
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
     
     /**
      *  Starts the systems and begins accepting remote connections.
@@ -197,15 +289,59 @@ public class GameServer
         systems.start();
         server.start(); 
         loop.start();
+        startMetrics();
         log.info("Game server started.");
     }
  
+    /**
+     *  Publishes the metrics over JMX and the HTTP endpoint.  Failing to do
+     *  either is logged but doesn't keep the server from running.  The HTTP 
+     *  port can be set with the "metrics.port" system property and a 
+     *  negative port disables the endpoint.
+     */
+    protected void startMetrics() {
+        try {
+            metricsBean = new MetricsMBean(metrics);
+            metricsBean.register(MetricsMBean.DEFAULT_NAME);
+        } catch( JMException e ) {
+            log.warn("Error registering metrics MBean", e);
+            metricsBean = null;
+        }
+        int port = Integer.getInteger("metrics.port", DEFAULT_METRICS_PORT);
+        if( port < 0 ) {
+            return;
+        }
+        try {
+            metricsServer = new MetricsHttpServer(metrics, port);
+            metricsServer.start();
+        } catch( IOException e ) {
+            log.warn("Error starting metrics endpoint on port:" + port, e);
+            metricsServer = null;
+        }
+    }
+    
+    protected void stopMetrics() {
+        if( metricsServer != null ) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+        if( metricsBean != null ) {
+            try {
+                metricsBean.unregister();
+            } catch( JMException e ) {
+                log.warn("Error unregistering metrics MBean", e);
+            }
+            metricsBean = null;
+        }
+    }
+ 
     /**
      *  Kicks all current connection, closes the network host, stops all systems, and 
      *  finally terminates them.  The GameServer is not restartable at this point.
      */   
     public void close( String kickMessage ) {
         log.info("Stopping game server..." + kickMessage);
+        stopMetrics();
         loop.stop();
         
         if( kickMessage != null ) {
@@ -252,6 +388,14 @@ public class GameServer
         }
     }
     
+    /**
+     *  Logs the tick profile: p50/p99/max times for the whole tick, each
+     *  profiled system, and each physics phase.
+     */   
+    public void logProfile() {
+        log.info("\n" + profiler.report());
+    }
+    
     /**
      *  Allow running a basic dedicated server from the command line using
      *  the default port.  If we want something more advanced then we should
@@ -296,6 +440,8 @@ public class GameServer
                 break;
             } else if( "stats".equals(line) ) {
                 gs.logStats();
+            } else if( "profile".equals(line) ) {
+                gs.logProfile();
             } else {
                 System.err.println("Unknown command:" + line);
             }
@@ -304,39 +450,43 @@ public class GameServer
         gs.close();
     }
     
-    // Just for debugging something
-    private class DelayService extends AbstractHostedService
-    {
-
-        private void safeSleep( long ms ) {
-            try {
-                Thread.sleep(ms);
-            } catch( InterruptedException e ) {
-                throw new RuntimeException("Checked exceptions are lame", e);
-            }
-        }
-
-        @Override
-        protected void onInitialize( HostedServiceManager serviceManager ) {
-            System.out.println("DelayService.onInitialize()");
-            //safeSleep(2000);
-            //System.out.println("DelayService.delay done");
+    /**
+     *  Adds ping and ack miss gauges for each connection while it is
+     *  connected.
+     */
+    private class ConnectionMetrics implements ConnectionListener {
+        private final EtherealHost ethereal;
+        
+        public ConnectionMetrics( EtherealHost ethereal ) {
+            this.ethereal = ethereal;
         }
         
         @Override
-        public void start() {
-            System.out.println("DelayService.start()");
-            //safeSleep(2000);
-            //System.out.println("DelayService.delay done");
+        public void connectionAdded( Server server, HostedConnection conn ) {
+            String prefix = "connection." + conn.getId();
+            
+            // The state listener doesn't exist until the player has joined
+            // the game so look it up every time
+            metrics.gauge(prefix + ".ping", () -> {
+                    NetworkStateListener listener = ethereal.getStateListener(conn);
+                    return listener == null ? Double.NaN 
+                                            : listener.getConnectionStats().getAveragePingTime() / 1000000.0;
+                });
+            metrics.gauge(prefix + ".ackMiss", () -> {
+                    NetworkStateListener listener = ethereal.getStateListener(conn);
+                    return listener == null ? Double.NaN 
+                                            : listener.getConnectionStats().getAckMissPercent();
+                });
+            metrics.gauge(prefix + ".messageSize", () -> {
+                    NetworkStateListener listener = ethereal.getStateListener(conn);
+                    return listener == null ? Double.NaN 
+                                            : listener.getConnectionStats().getAverageMessageSize();
+                });
         }
-                
+        
         @Override
-        public void connectionAdded(Server server, HostedConnection hc) {
-            // Just in case
-            super.connectionAdded(server, hc);
-            System.out.println("DelayService.connectionAdded(" + hc + ")");
-            safeSleep(500);
-            System.out.println("DelayService.delay done");
+        public void connectionRemoved( Server server, HostedConnection conn ) {
+            metrics.removeAll("connection." + conn.getId());
         }
     }
 }
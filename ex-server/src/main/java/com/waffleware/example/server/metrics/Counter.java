@@ -0,0 +1,105 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ *  A monotonically increasing count.  Counters either keep their own
+ *  count, which can be bumped cheaply from any thread, or read it from
+ *  some existing total.  Along with the count, a counter reports its
+ *  per-second rate averaged over the time since the rate was last 
+ *  computed, but never over less than a second.
+ *
+ *  @author    Paul Speed
+ */
+public class Counter extends Metric {
+
+    private final LongAdder count = new LongAdder();
+    private final LongSupplier source;
+    
+    private long lastCount;
+    private long lastTime = System.nanoTime();
+    private double rate;
+    
+    public Counter( String name ) {
+        this(name, null);
+    }
+ 
+    /**
+     *  Creates a counter that reports the value of the specified source
+     *  instead of its own count.
+     */   
+    public Counter( String name, LongSupplier source ) {
+        super(name);
+        this.source = source;
+    }
+    
+    public void increment() {
+        count.increment();
+    }
+    
+    public void add( long delta ) {
+        count.add(delta);
+    }
+    
+    public long getCount() {
+        return source != null ? source.getAsLong() : count.sum();
+    }
+ 
+    /**
+     *  Returns the count per second.
+     */   
+    public synchronized double getRate() {
+        long time = System.nanoTime();
+        long elapsed = time - lastTime;
+        if( elapsed >= 1000000000L ) {
+            long current = getCount();
+            rate = (current - lastCount) * 1000000000.0 / elapsed;
+            lastCount = current;
+            lastTime = time;
+        }
+        return rate;
+    }
+    
+    @Override
+    public void collect( MetricSink sink ) {
+        sink.sample(getName(), getCount());
+        sink.sample(getName() + ".rate", getRate());
+    }
+}
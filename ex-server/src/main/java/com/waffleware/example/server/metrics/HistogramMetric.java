@@ -0,0 +1,100 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.metrics;
+
+import com.waffleware.example.logic.stats.Histogram;
+import com.waffleware.example.logic.stats.TickProfiler;
+
+/**
+ *  Reports the count, mean, and percentiles of a distribution.  The
+ *  distribution is either recorded directly into this metric, in which
+ *  case it accumulates from startup, or is the last complete window of a 
+ *  TickProfiler timer.  Values are divided by the scale when reported, 
+ *  for example, 1000000 to report nanoseconds as milliseconds.
+ *
+ *  @author    Paul Speed
+ */
+public class HistogramMetric extends Metric {
+
+    private final TickProfiler.Timer timer;
+    private final double scale;
+    private final Histogram histogram = new Histogram();
+    private final Histogram snapshot = new Histogram();
+    
+    public HistogramMetric( String name, double scale ) {
+        this(name, null, scale);
+    }
+ 
+    /**
+     *  Creates a histogram metric that reports the specified profiler
+     *  timer's last complete window.
+     */   
+    public HistogramMetric( String name, TickProfiler.Timer timer, double scale ) {
+        super(name);
+        this.timer = timer;
+        this.scale = scale;
+    }
+ 
+    public void record( long value ) {
+        if( timer != null ) {
+            throw new IllegalStateException("Values come from the timer:" + timer.getName());
+        }
+        synchronized( histogram ) {
+            histogram.record(value);
+        }
+    }
+    
+    @Override
+    public void collect( MetricSink sink ) {
+        synchronized( snapshot ) {
+            if( timer != null ) {
+                timer.snapshot(snapshot);
+            } else {
+                synchronized( histogram ) {
+                    histogram.copyInto(snapshot);
+                }
+            }
+            String name = getName();
+            sink.sample(name + ".count", snapshot.getCount());
+            sink.sample(name + ".mean", snapshot.getMean() / scale);
+            sink.sample(name + ".p50", snapshot.getPercentile(50) / scale);
+            sink.sample(name + ".p90", snapshot.getPercentile(90) / scale);
+            sink.sample(name + ".p99", snapshot.getPercentile(99) / scale);
+            sink.sample(name + ".max", snapshot.getMax() / scale);
+        }
+    }
+}
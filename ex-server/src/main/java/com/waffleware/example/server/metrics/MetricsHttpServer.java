@@ -0,0 +1,142 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *  A tiny HTTP endpoint that serves the current metrics as plain text,
+ *  one "name value" pair per line, at /metrics.  Dots in the names are
+ *  turned into underscores so that the output can be scraped directly
+ *  by Prometheus-style collectors.  By default it only listens on the 
+ *  loopback address.
+ *
+ *  @author    Paul Speed
+ */
+public class MetricsHttpServer {
+
+    static Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private final MetricsRegistry registry;
+    private final InetSocketAddress address;
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    public MetricsHttpServer( MetricsRegistry registry, int port ) {
+        this(registry, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+    
+    public MetricsHttpServer( MetricsRegistry registry, InetSocketAddress address ) {
+        this.registry = registry;
+        this.address = address;
+    }
+    
+    public void start() throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "MetricsHttpServer");
+                t.setDaemon(true);
+                return t;
+            });
+        server.setExecutor(executor);
+        server.start();
+        log.info("Serving metrics at http://" + address.getHostString() + ":" + getPort() + "/metrics");
+    }
+    
+    public void stop() {
+        if( server == null ) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+    }
+ 
+    /**
+     *  Returns the actual port being listened on, which is useful when
+     *  the server was created with port 0.
+     */   
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : address.getPort();
+    }
+ 
+    /**
+     *  Returns the current metrics in the text format served by the endpoint.
+     */   
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        registry.collect((name, value) -> {
+                sb.append(name.replace('.', '_')).append(' ');
+                if( value == Math.rint(value) && !Double.isInfinite(value) ) {
+                    sb.append((long)value);
+                } else {
+                    sb.append(value);
+                }
+                sb.append('\n');
+            });
+        return sb.toString();
+    }
+ 
+    protected void handle( HttpExchange exchange ) throws IOException {
+        try {
+            if( !"GET".equals(exchange.getRequestMethod()) ) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = format().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try( OutputStream out = exchange.getResponseBody() ) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ *  Exposes every sample in a MetricsRegistry as a read-only JMX attribute
+ *  so that the server can be watched with jconsole, VisualVM, or any other
+ *  JMX client.  The attribute list is rebuilt whenever the MBean info is 
+ *  requested since metrics come and go with connections.
+ *
+ *  @author    Paul Speed
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    public static final String DEFAULT_NAME = "com.waffleware.example:type=Metrics";
+
+    private final MetricsRegistry registry;
+    private ObjectName objectName;
+    
+    public MetricsMBean( MetricsRegistry registry ) {
+        this.registry = registry;
+    }
+ 
+    /**
+     *  Registers this MBean with the platform MBean server under the 
+     *  specified name.
+     */   
+    public void register( String name ) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        this.objectName = new ObjectName(name);
+        server.registerMBean(this, objectName);
+    }
+    
+    public void unregister() throws JMException {
+        if( objectName == null ) {
+            return;
+        }
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        objectName = null;
+    }
+ 
+    protected Map<String, Double> sample() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        registry.collect((name, value) -> result.put(name, value));
+        return result;
+    }
+ 
+    @Override
+    public Object getAttribute( String attribute ) throws AttributeNotFoundException {
+        Double result = sample().get(attribute);
+        if( result == null ) {
+            throw new AttributeNotFoundException("No such metric:" + attribute);
+        }
+        return result;
+    }
+ 
+    @Override
+    public void setAttribute( Attribute attribute ) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only:" + attribute.getName());
+    }
+ 
+    @Override
+    public AttributeList getAttributes( String[] attributes ) {
+        Map<String, Double> samples = sample();
+        AttributeList result = new AttributeList();
+        for( String name : attributes ) {
+            Double value = samples.get(name);
+            if( value != null ) {
+                result.add(new Attribute(name, value));
+            }
+        }
+        return result;
+    }
+ 
+    @Override
+    public AttributeList setAttributes( AttributeList attributes ) {
+        return new AttributeList();
+    }
+ 
+    @Override
+    public Object invoke( String actionName, Object[] params, String[] signature ) throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+ 
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for( String name : sample().keySet() ) {
+            attrs.add(new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Game server metrics", 
+                             attrs.toArray(new MBeanAttributeInfo[attrs.size()]),
+                             null, null, null);
+    }
+}
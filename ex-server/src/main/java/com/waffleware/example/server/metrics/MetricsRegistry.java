@@ -0,0 +1,138 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.metrics;
+
+import com.waffleware.example.logic.stats.TickProfiler;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ *  A thread safe, name-ordered collection of counters, gauges, and 
+ *  histograms.  Names are dot separated, like "connection.3.ping", so 
+ *  that related metrics sort together and can be removed as a group.
+ *
+ *  @author    Paul Speed
+ */
+public class MetricsRegistry {
+
+    private final ConcurrentNavigableMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    
+    public MetricsRegistry() {
+    }
+ 
+    /**
+     *  Adds the specified metric, replacing any existing metric with the same 
+     *  name.
+     */   
+    public <T extends Metric> T register( T metric ) {
+        metrics.put(metric.getName(), metric);
+        return metric;
+    }
+ 
+    /**
+     *  Returns the counter with the specified name, creating it if it
+     *  doesn't exist.
+     */   
+    public Counter counter( String name ) {
+        Metric existing = metrics.get(name);
+        if( existing instanceof Counter ) {
+            return (Counter)existing;
+        }
+        Counter result = new Counter(name);
+        existing = metrics.putIfAbsent(name, result);
+        if( existing != null ) {
+            if( !(existing instanceof Counter) ) {
+                throw new IllegalArgumentException("Metric is not a counter:" + existing);
+            }
+            return (Counter)existing;
+        }
+        return result;
+    }
+ 
+    public Counter counter( String name, LongSupplier source ) {
+        return register(new Counter(name, source));
+    }
+    
+    public Gauge gauge( String name, DoubleSupplier value ) {
+        return register(new Gauge(name, value));
+    }
+    
+    public HistogramMetric histogram( String name, double scale ) {
+        return register(new HistogramMetric(name, scale));
+    }
+    
+    public HistogramMetric timer( String name, TickProfiler.Timer timer, double scale ) {
+        return register(new HistogramMetric(name, timer, scale));
+    }
+    
+    public Metric get( String name ) {
+        return metrics.get(name);
+    }
+    
+    public Metric remove( String name ) {
+        return metrics.remove(name);
+    }
+ 
+    /**
+     *  Removes all of the metrics whose names start with the specified
+     *  prefix followed by a dot.
+     */   
+    public void removeAll( String prefix ) {
+        String start = prefix + ".";
+        Map<String, Metric> group = metrics.subMap(start, true, start + Character.MAX_VALUE, true);
+        group.clear();
+    }
+ 
+    public Collection<Metric> getMetrics() {
+        return metrics.values();
+    }
+ 
+    /**
+     *  Passes the current samples of every metric to the sink in name
+     *  order.
+     */   
+    public void collect( MetricSink sink ) {
+        for( Metric metric : metrics.values() ) {
+            metric.collect(sink);
+        }
+    }
+}
@@ -52,12 +52,24 @@ import com.waffleware.example.server.events.AccountEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  *  Provides super-basic account services like logging in.  This could
  *  be expanded to be more complicated based on a real game's needs.
  *  The basics have been included here as a minimal example that includes
  *  the basic types of communication necessary.
  *
+ *  <p>Logins are not processed on the RMI thread that receives them.  They
+ *  go into a bounded admission queue, and a single worker thread admits 
+ *  them at a limited rate using a token bucket.  Admitting a player creates
+ *  their entities and starts the game session hosting, so a mass reconnect
+ *  after a restart is spread out instead of all landing at once.  Players
+ *  waiting in the queue are sent their position through 
+ *  AccountSessionListener.notifyQueuePosition().</p>
+ *
  *  @author    Paul Speed
  */
 public class AccountHostedService extends AbstractHostedConnectionService
@@ -73,9 +85,78 @@ public class AccountHostedService extends AbstractHostedConnectionService
  
     private String serverInfo;
     private EntityData ed;
+ 
+    private double loginRate = 10;
+    private int loginBurst = 5;
+    private int maxQueueSize = 1000;
+    private long positionInterval = TimeUnit.SECONDS.toNanos(1);
+    
+    private final ArrayDeque<AccountSessionImpl> queue = new ArrayDeque<>();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private Thread admissionThread;
+    private volatile boolean running;
     
     public AccountHostedService( String serverInfo ) {
         this.serverInfo = serverInfo;
+        
+        // HandshakeHostedService starts hosting once the client has
+        // registered our serializers
+        setAutoHost(false);
+    }
+ 
+    /**
+     *  Sets the steady state number of logins admitted per second.  
+     *  Defaults to 10.
+     */   
+    public void setLoginRate( double loginRate ) {
+        if( loginRate <= 0 ) {
+            throw new IllegalArgumentException("Login rate must be positive:" + loginRate);
+        }
+        this.loginRate = loginRate;
+    }
+    
+    public double getLoginRate() {
+        return loginRate;
+    }
+ 
+    /**
+     *  Sets how many logins can be admitted back to back after the
+     *  queue has been idle.  Defaults to 5.
+     */   
+    public void setLoginBurst( int loginBurst ) {
+        this.loginBurst = Math.max(1, loginBurst);
+    }
+    
+    public int getLoginBurst() {
+        return loginBurst;
+    }
+ 
+    /**
+     *  Sets the most logins that can be waiting for admission.  Logins 
+     *  beyond this are refused.  Defaults to 1000.
+     */   
+    public void setMaxQueueSize( int maxQueueSize ) {
+        this.maxQueueSize = maxQueueSize;
+    }
+    
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+ 
+    /**
+     *  Returns the number of logins currently waiting for admission.
+     */   
+    public int getQueuedCount() {
+        synchronized( queue ) {
+            return queue.size();
+        }
+    }
+ 
+    /**
+     *  Returns the total number of logins admitted since startup.
+     */   
+    public long getAdmittedCount() {
+        return admittedCount.get();
     }
     
     public static String getPlayerName( HostedConnection conn ) {
@@ -103,6 +184,59 @@ public class AccountHostedService extends AbstractHostedConnectionService
             throw new RuntimeException("AccountHostedService requires an EntityDataHostedService");
         }
         this.ed = eds.getEntityData();
+        
+        running = true;
+        admissionThread = new Thread(new AdmissionWorker(), "LoginAdmission");
+        admissionThread.setDaemon(true);
+        admissionThread.start();
+    }
+ 
+    @Override
+    public void stop() {
+        running = false;
+        if( admissionThread != null ) {
+            admissionThread.interrupt();
+            admissionThread = null;
+        }
+    }
+ 
+    /**
+     *  Adds the session to the end of the admission queue and returns
+     *  the number of logins ahead of it, or -1 if the queue is full.
+     */   
+    protected int enqueue( AccountSessionImpl session ) {
+        synchronized( queue ) {
+            if( queue.size() >= maxQueueSize ) {
+                return -1;
+            }
+            int ahead = queue.size();
+            queue.add(session);
+            queue.notifyAll();
+            return ahead;
+        }
+    }
+    
+    protected void dequeue( AccountSessionImpl session ) {
+        synchronized( queue ) {
+            queue.remove(session);
+        }
+    }
+ 
+    /**
+     *  Tells everyone still waiting where they are in the queue.
+     */   
+    protected void sendQueuePositions() {
+        AccountSessionImpl[] waiting;
+        synchronized( queue ) {
+            waiting = queue.toArray(new AccountSessionImpl[queue.size()]);
+        }
+        for( int i = 0; i < waiting.length; i++ ) {
+            try {
+                waiting[i].getCallback().notifyQueuePosition(i);
+            } catch( RuntimeException e ) {
+                log.warn("Error sending queue position to:" + waiting[i].conn, e);
+            }
+        }
     }
    
     @Override
@@ -123,6 +257,10 @@ public class AccountHostedService extends AbstractHostedConnectionService
         log.debug("stopHostingOnConnection(" + conn + ")");
         AccountSessionImpl account = conn.getAttribute(ATTRIBUTE_SESSION);
         if( account != null ) {
+            // Make sure a queued login is never admitted
+            dequeue(account);
+            account.close();
+            
             String playerName = getPlayerName(conn);        
             log.debug("publishing playerLoggedOff event for:" + conn);
             // Was really logged on before
@@ -141,7 +279,10 @@ public class AccountHostedService extends AbstractHostedConnectionService
  
         private HostedConnection       conn;
         private AccountSessionListener callback;
-        private EntityId               player;
+        private volatile EntityId      player;
+        private String                 playerName;
+        private boolean                queued;
+        private boolean                closed;
         
         public AccountSessionImpl( HostedConnection conn ) {
             this.conn = conn;
@@ -169,6 +310,40 @@ public class AccountHostedService extends AbstractHostedConnectionService
         @Override   
         public void login( String playerName ) {
             log.info("login(" + playerName + ")");
+            synchronized( this ) {
+                if( closed || queued || player != null ) {
+                    log.warn("Ignoring repeated login(" + playerName + ") for:" + conn);
+                    return;
+                }
+                this.playerName = playerName;
+                this.queued = true;
+            }
+            
+            int ahead = enqueue(this);
+            if( ahead < 0 ) {
+                log.warn("Login queue is full, refusing:" + playerName);
+                synchronized( this ) {
+                    queued = false;
+                }
+                getCallback().notifyLoginStatus(false);
+                return;
+            }
+            if( ahead > 0 ) {
+                getCallback().notifyQueuePosition(ahead);
+            }
+        }
+ 
+        /**
+         *  Called from the admission worker to actually log the player on.
+         *  This is done while holding the session lock so that a connection
+         *  closing at the same time either sees a complete login or none
+         *  at all.
+         */
+        protected synchronized void admit() {
+            queued = false;
+            if( closed ) {
+                return;
+            }
             conn.setAttribute(ATTRIBUTE_PLAYER_NAME, playerName);
  
             // Create the player entity
@@ -176,6 +351,7 @@ public class AccountHostedService extends AbstractHostedConnectionService
             conn.setAttribute(ATTRIBUTE_PLAYER_ENTITY, player);
             ed.setComponents(player, new Name(playerName));
             log.info("Created player entity:" + player + " for:" + playerName);
+            admittedCount.incrementAndGet();
             
             // And let them know they were successful
             getCallback().notifyLoginStatus(true);
@@ -185,12 +361,78 @@ public class AccountHostedService extends AbstractHostedConnectionService
             EventBus.publish(AccountEvent.playerLoggedOn, new AccountEvent(conn, playerName, player));            
         }
         
-        public void dispose() {
+        public synchronized void close() {
+            closed = true;
+        }
+        
+        public synchronized void dispose() {
             // The player is the ship is the entity... so we need to delete
             // the ship
-            ed.removeEntity(player);
+            if( player != null ) {
+                ed.removeEntity(player);
+            }
         }
-    }    
+    }
+ 
+    /**
+     *  Admits queued logins no faster than the login rate, refilling 
+     *  a token bucket that holds up to the login burst.  While the 
+     *  queue is backed up, the waiting players get their positions every 
+     *  second or so.
+     */
+    private class AdmissionWorker implements Runnable {
+    
+        private double tokens = loginBurst;
+        private long lastRefill = System.nanoTime();
+        private long nextPositionUpdate = lastRefill;
+        
+        @Override
+        public void run() {
+            while( running ) {
+                try {
+                    admitNext();
+                } catch( InterruptedException e ) {
+                    // Just loop around and check running
+                } catch( RuntimeException e ) {
+                    log.error("Error admitting login", e);
+                }
+            }
+            log.debug("Admission worker stopped");
+        }
+ 
+        private void admitNext() throws InterruptedException {
+            synchronized( queue ) {
+                while( queue.isEmpty() ) {
+                    queue.wait();
+                }
+            }
+ 
+            long now = System.nanoTime();
+            tokens = Math.min(loginBurst, tokens + (now - lastRefill) * loginRate / 1e9);
+            lastRefill = now;
+            
+            if( tokens < 1 ) {
+                if( now - nextPositionUpdate >= 0 ) {
+                    sendQueuePositions();
+                    nextPositionUpdate = now + positionInterval;
+                }
+                long wait = (long)Math.ceil((1 - tokens) / loginRate * 1e9);
+                wait = Math.min(wait, Math.max(0, nextPositionUpdate - now));
+                TimeUnit.NANOSECONDS.sleep(Math.max(1000000L, wait));
+                return;
+            }
+ 
+            AccountSessionImpl next;
+            synchronized( queue ) {
+                next = queue.poll();
+            }
+            if( next == null ) {
+                return;
+            }
+            tokens -= 1;
+            next.admit();
+        }
+    }
 }
 
 
@@ -38,6 +38,8 @@ package com.waffleware.example.server.services;
 
 import com.jme3.network.HostedConnection;
 import com.jme3.network.MessageConnection;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.ArraySerializer;
 import com.jme3.network.service.AbstractHostedConnectionService;
 import com.jme3.network.service.HostedServiceManager;
 import com.jme3.network.service.rmi.RmiHostedService;
@@ -47,15 +49,44 @@ import com.waffleware.example.communication.sessions.ChatSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *  HostedService providing a chat server for connected players.  Some
  *  time during player connection setup, the game must start hosting
  *  and provide the player name in order for the client to participate.
  *
+ *  <p>Chat events are not sent on the thread that generates them.  They are
+ *  queued for a dispatcher thread that collects everything generated within
+ *  a short batching window and sends it to each player in
+ *  ChatSessionListener.chatEvents() calls of at most maxBatchSize events.
+ *  Clients acknowledge each batch with ChatSession.chatEventsReceived() and
+ *  a player with maxUnackedBatches unacknowledged is not sent any more 
+ *  until it catches up.  Only the outbox of a player that is behind like
+ *  that can grow, and once it grows past maxBacklog the player is handled 
+ *  by the BackpressurePolicy.  They either lose their oldest chat messages 
+ *  or are disconnected.</p>
+ *
+ *  <p>Each player can only post chat messages at maxMessageRate per second
+ *  with bursts of up to maxMessageBurst.  Messages over the limit are 
+ *  rejected so that one flooding sender can't fill everyone's outbox.</p>
+ *
+ *  <p>The dispatcher also keeps the player roster.  Every join or leave
+ *  increments a roster version.  Each batch of changes is pushed to the 
+ *  players as a versioned rosterChanged() delta, and new players get a
+ *  full rosterSnapshot().  Clients keep a local copy instead of asking
+ *  for the player names.</p>
+ *
  *  @author    Paul Speed
  */
 public class ChatHostedService
@@ -71,6 +102,63 @@ public class ChatHostedService
 
     private List<ChatSessionImpl> players = new CopyOnWriteArrayList<>();
     
+    private AtomicLong messageCount = new AtomicLong();
+ 
+    /**
+     *  What to do with a player that is behind on acknowledging batches 
+     *  and whose outbox has grown past the maximum backlog.
+     */
+    public enum BackpressurePolicy { 
+        /**
+         *  Drop the oldest chat messages from the outbox.  Join and leave
+         *  events are always kept so that the player list stays correct.
+         */
+        DROP, 
+        
+        /**
+         *  Disconnect the player.
+         */
+        KICK
+    }
+ 
+    private long batchWindow = 50;
+    private int maxBatchSize = 64;
+    private int maxBacklog = 512;
+    private int maxUnackedBatches = 4;
+    private BackpressurePolicy policy = BackpressurePolicy.DROP;
+    private double maxMessageRate = 5;
+    private int maxMessageBurst = 10;
+    
+    private final BlockingQueue<ChatEvent> events = new LinkedBlockingQueue<>();
+    private Thread dispatchThread;
+    private volatile boolean running;
+    private AtomicLong batchCount = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+    private AtomicLong kickedCount = new AtomicLong();
+    private AtomicLong rejectedCount = new AtomicLong();
+ 
+    /**
+     *  Internal event kind for a player asking for a new roster snapshot.
+     */
+    private static final int EVENT_RESYNC = -1;
+ 
+    // The roster is only modified on the dispatcher thread 
+    private final Map<Integer, String> roster = new LinkedHashMap<>();
+    private int rosterVersion;
+    
+    // Replaced rather than modified so it can be handed out as is.  It 
+    // has to stay a plain ArrayList since that is what the RMI reply 
+    // knows how to serialize.
+    private volatile ArrayList<String> rosterNames = new ArrayList<>();
+    
+    // The changes from the current dispatch and, when needed, the
+    // snapshot arrays for it
+    private final List<ChatEvent> rosterDelta = new ArrayList<>();
+    private int[] deltaKinds;
+    private int[] deltaIds;
+    private String[] deltaNames;
+    private int[] snapshotIds;
+    private String[] snapshotNames;
  
     /**
      *  Creates a new chat service that will use the default reliable channel
@@ -87,6 +175,133 @@ public class ChatHostedService
     public ChatHostedService(int channel ) {
         this.channel = channel;
         setAutoHost(false);
+        
+        // The batched callback passes arrays as RMI arguments and these 
+        // must be registered before the server sends its registrations
+        Serializer.registerClass(int[].class, new ArraySerializer());
+        Serializer.registerClass(String[].class, new ArraySerializer());
+    }
+ 
+    /**
+     *  Sets how long in milliseconds the dispatcher collects chat events 
+     *  before sending them.  Defaults to 50 ms.
+     */
+    public void setBatchWindow( long millis ) {
+        this.batchWindow = Math.max(0, millis);
+    }
+    
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+ 
+    /**
+     *  Sets the most events sent to a player in one batched call.
+     *  Defaults to 64.
+     */
+    public void setMaxBatchSize( int maxBatchSize ) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+    
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+ 
+    /**
+     *  Sets how many unsent events a player that is behind on acknowledging
+     *  batches can have before the backpressure policy is applied.  
+     *  Defaults to 512.
+     */
+    public void setMaxBacklog( int maxBacklog ) {
+        this.maxBacklog = Math.max(1, maxBacklog);
+    }
+    
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+ 
+    /**
+     *  Sets how many batched calls a player can have unacknowledged before 
+     *  nothing more is sent to it.  Defaults to 4.
+     */
+    public void setMaxUnackedBatches( int maxUnackedBatches ) {
+        this.maxUnackedBatches = Math.max(1, maxUnackedBatches);
+    }
+    
+    public int getMaxUnackedBatches() {
+        return maxUnackedBatches;
+    }
+ 
+    /**
+     *  Sets the steady state number of chat messages each player can post
+     *  per second.  Defaults to 5.
+     */
+    public void setMaxMessageRate( double maxMessageRate ) {
+        if( maxMessageRate <= 0 ) {
+            throw new IllegalArgumentException("Message rate must be positive:" + maxMessageRate);
+        }
+        this.maxMessageRate = maxMessageRate;
+    }
+    
+    public double getMaxMessageRate() {
+        return maxMessageRate;
+    }
+ 
+    /**
+     *  Sets how many chat messages a player can post back to back after
+     *  being quiet.  Defaults to 10.
+     */
+    public void setMaxMessageBurst( int maxMessageBurst ) {
+        this.maxMessageBurst = Math.max(1, maxMessageBurst);
+    }
+    
+    public int getMaxMessageBurst() {
+        return maxMessageBurst;
+    }
+    
+    public void setBackpressurePolicy( BackpressurePolicy policy ) {
+        this.policy = policy;
+    }
+    
+    public BackpressurePolicy getBackpressurePolicy() {
+        return policy;
+    }
+ 
+    /**
+     *  Returns the total number of batched calls sent since startup.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+ 
+    /**
+     *  Returns the total number of chat messages dropped from player
+     *  outboxes by the DROP policy since startup.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+ 
+    /**
+     *  Returns the total number of players disconnected by the KICK
+     *  policy since startup.
+     */
+    public long getKickedCount() {
+        return kickedCount.get();
+    }
+ 
+    /**
+     *  Returns the total number of chat messages rejected because their
+     *  sender was over the message rate since startup.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+ 
+    /**
+     *  Returns the total number of chat messages posted since startup.
+     */
+    public long getMessageCount() {
+        return messageCount.get();
     }
  
     protected ChatSessionImpl getChatSession( HostedConnection conn ) {
@@ -102,6 +317,23 @@ public class ChatHostedService
             throw new RuntimeException("ChatHostedService requires an RMI service.");
         }
     }
+ 
+    @Override
+    public void start() {
+        running = true;
+        dispatchThread = new Thread(new Dispatcher(), "ChatDispatcher");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+ 
+    @Override
+    public void stop() {
+        running = false;
+        if( dispatchThread != null ) {
+            dispatchThread.interrupt();
+            dispatchThread = null;
+        }
+    }
     
     /**
      *  Starts hosting the chat services on the specified connection using
@@ -121,13 +353,7 @@ public class ChatHostedService
         players.add(session);
         
         // Send the enter event to other players
-        for( ChatSessionImpl chatter : players ) {
-            if( chatter == session ) {
-                // Don't send our enter event to ourselves
-                continue;
-            }
-            chatter.playerJoined(conn.getId(), playerName);
-        }
+        events.add(new ChatEvent(session, ChatSessionListener.EVENT_JOINED, null));
     }
         
     /**
@@ -155,20 +381,155 @@ public class ChatHostedService
             players.remove(player);
  
             // Send the leave event to other players
-            for( ChatSessionImpl chatter : players ) {
-                if( chatter == player ) {
-                    // Don't send our enter event to ourselves
-                    continue;
-                }
-                chatter.playerLeft(player.conn.getId(), player.name);
-            }        
+            events.add(new ChatEvent(player, ChatSessionListener.EVENT_LEFT, null));
         }
     }
 
     protected void postMessage( ChatSessionImpl from, String message ) {
+        if( !from.allowMessage() ) {
+            rejectedCount.incrementAndGet();
+            log.debug("Rejected message from " + from.name + " over the message rate");
+            return;
+        }
         log.info("chat> " + from.name + " said:" + message);
+        messageCount.incrementAndGet();
+        events.add(new ChatEvent(from, ChatSessionListener.EVENT_MESSAGE, message));
+    }
+ 
+    /**
+     *  Adds the events to the outbox of every player that should see them
+     *  and then sends each player as much of their outbox as they have
+     *  acknowledgements for.  Returns true if any outbox still has events 
+     *  left in it.
+     */
+    protected boolean dispatch( List<ChatEvent> batch ) {
+        updateRoster(batch);
+        boolean backlogged = false;
         for( ChatSessionImpl chatter : players ) {
-            chatter.newMessage(from.conn.getId(), from.name, message);
+            // Roster changes go out ahead of the chat events that
+            // announce them
+            chatter.sendRoster();
+            chatter.enqueue(batch);
+            backlogged |= chatter.flush();
+        }
+        rosterDelta.clear();
+        snapshotIds = null;
+        snapshotNames = null;
+        return backlogged;
+    }
+ 
+    /**
+     *  Applies the join and leave events to the roster and builds the delta
+     *  arrays that will be sent to everyone for this dispatch.
+     */
+    protected void updateRoster( List<ChatEvent> batch ) {
+        for( ChatEvent event : batch ) {
+            switch( event.kind ) {
+                case ChatSessionListener.EVENT_JOINED:
+                    roster.put(event.clientId, event.playerName);
+                    rosterDelta.add(event);
+                    break;
+                case ChatSessionListener.EVENT_LEFT:
+                    if( roster.remove(event.clientId) != null ) {
+                        rosterDelta.add(event);
+                    }
+                    break;
+                case EVENT_RESYNC:
+                    event.from.rosterSynced = false;
+                    break;
+            }
+        }
+        
+        int size = rosterDelta.size();
+        if( size == 0 ) {
+            return;
+        }
+        rosterVersion += size;
+        deltaKinds = new int[size];
+        deltaIds = new int[size];
+        deltaNames = new String[size];
+        for( int i = 0; i < size; i++ ) {
+            ChatEvent event = rosterDelta.get(i);
+            deltaKinds[i] = event.kind;
+            deltaIds[i] = event.clientId;
+            deltaNames[i] = event.playerName;
+        }
+        rosterNames = new ArrayList<>(roster.values());
+    }
+ 
+    /**
+     *  Builds the current roster as parallel ID and name arrays, at most
+     *  once per dispatch.
+     */
+    protected void buildSnapshot() {
+        if( snapshotIds != null ) {
+            return;
+        }
+        snapshotIds = new int[roster.size()];
+        snapshotNames = new String[roster.size()];
+        int i = 0;
+        for( Map.Entry<Integer, String> e : roster.entrySet() ) {
+            snapshotIds[i] = e.getKey();
+            snapshotNames[i] = e.getValue();
+            i++;
+        }
+    }
+ 
+    /**
+     *  A single chat event waiting to be dispatched.
+     */
+    private static class ChatEvent {
+        final ChatSessionImpl from;
+        final int kind;
+        final int clientId;
+        final String playerName;
+        final String message;
+        
+        public ChatEvent( ChatSessionImpl from, int kind, String message ) {
+            this.from = from;
+            this.kind = kind;
+            this.clientId = from.conn.getId();
+            this.playerName = from.name;
+            this.message = message;
+        }
+    }
+ 
+    /**
+     *  Waits for chat events, gives the batching window a chance to collect 
+     *  more, and then dispatches them.  When some outboxes are backed up, it
+     *  keeps flushing them every window even if nothing new arrives.
+     */
+    private class Dispatcher implements Runnable {
+        private final List<ChatEvent> batch = new ArrayList<>();
+        private boolean backlogged;
+    
+        @Override
+        public void run() {
+            while( running ) {
+                try {
+                    ChatEvent first;
+                    if( backlogged ) {
+                        first = events.poll(batchWindow, TimeUnit.MILLISECONDS);
+                    } else {
+                        first = events.take();
+                        if( batchWindow > 0 ) {
+                            Thread.sleep(batchWindow);
+                        }
+                    }
+                    if( first != null ) {
+                        batch.add(first);
+                    }
+                    events.drainTo(batch);
+                    backlogged = dispatch(batch);
+                } catch( InterruptedException e ) {
+                    // Just loop around and check running
+                } catch( RuntimeException e ) {
+                    log.error("Error dispatching chat events", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+            log.debug("Chat dispatcher stopped");
         }
     }
  
@@ -185,6 +546,17 @@ public class ChatHostedService
         private ChatSessionListener callback;
         private String              name;
         
+        // Only accessed from the dispatcher thread
+        private ArrayDeque<ChatEvent> outbox = new ArrayDeque<>();
+        private boolean             kicked;
+        private boolean             rosterSynced;
+        private long                sentBatches;
+        
+        // Updated from the connection's RMI calls
+        private final AtomicLong    ackedBatches = new AtomicLong();
+        private double              messageTokens = maxMessageBurst;
+        private long                lastRefill = System.nanoTime();
+        
         public ChatSessionImpl(HostedConnection conn, String name ) {
             this.conn = conn;
             this.name = name;
@@ -204,6 +576,127 @@ public class ChatHostedService
             return callback;
         } 
  
+        /**
+         *  Returns true if this player has as many batches unacknowledged
+         *  as it is allowed.
+         */
+        protected boolean isBehind() {
+            return sentBatches - ackedBatches.get() >= maxUnackedBatches;
+        }
+ 
+        /**
+         *  Takes a token from this player's message bucket, refilling it 
+         *  for the time since the last message first, and returns false if 
+         *  there wasn't one.
+         */
+        protected synchronized boolean allowMessage() {
+            long now = System.nanoTime();
+            messageTokens = Math.min(maxMessageBurst, messageTokens + (now - lastRefill) * maxMessageRate / 1e9);
+            lastRefill = now;
+            if( messageTokens < 1 ) {
+                return false;
+            }
+            messageTokens -= 1;
+            return true;
+        }
+ 
+        /**
+         *  Adds the events that this player should see to its outbox,
+         *  applying the backpressure policy if it grows too large while
+         *  the player is behind.
+         */
+        protected void enqueue( List<ChatEvent> batch ) {
+            if( kicked ) {
+                return;
+            }
+            for( ChatEvent event : batch ) {
+                if( event.kind == EVENT_RESYNC ) {
+                    continue;
+                }
+                if( event.from == this && event.kind != ChatSessionListener.EVENT_MESSAGE ) {
+                    // Don't send our own enter or leave events to ourselves
+                    continue;
+                }
+                outbox.add(event);
+            }
+            if( outbox.size() <= maxBacklog || !isBehind() ) {
+                return;
+            }
+            switch( policy ) {
+                case KICK:
+                    log.warn("Disconnecting " + name + " with chat backlog:" + outbox.size());
+                    kicked = true;
+                    outbox.clear();
+                    kickedCount.incrementAndGet();
+                    conn.close("Too far behind on chat");
+                    break;
+                case DROP:
+                default:
+                    for( Iterator<ChatEvent> it = outbox.iterator(); it.hasNext() && outbox.size() > maxBacklog; ) {
+                        if( it.next().kind == ChatSessionListener.EVENT_MESSAGE ) {
+                            it.remove();
+                            droppedCount.incrementAndGet();
+                        }
+                    }
+                    break;
+            }
+        }
+ 
+        /**
+         *  Sends a full snapshot if this player doesn't have the roster yet,
+         *  or else the changes from this dispatch.
+         */
+        protected void sendRoster() {
+            if( kicked ) {
+                return;
+            }
+            try {
+                if( !rosterSynced ) {
+                    buildSnapshot();
+                    getCallback().rosterSnapshot(rosterVersion, snapshotIds, snapshotNames);
+                    rosterSynced = true;
+                } else if( !rosterDelta.isEmpty() ) {
+                    getCallback().rosterChanged(rosterVersion, deltaKinds, deltaIds, deltaNames);
+                }
+            } catch( RuntimeException e ) {
+                log.warn("Error sending roster to:" + name, e);
+            }
+        }
+ 
+        /**
+         *  Sends the outbox in calls of up to maxBatchSize events until it is 
+         *  empty or the player is behind and returns true if there are still
+         *  more waiting.
+         */
+        protected boolean flush() {
+            while( !outbox.isEmpty() && !kicked && !isBehind() ) {
+                sendBatch();
+            }
+            return !outbox.isEmpty();
+        }
+ 
+        private void sendBatch() {
+            int size = Math.min(outbox.size(), maxBatchSize);
+            int[] kinds = new int[size];
+            int[] clientIds = new int[size];
+            String[] playerNames = new String[size];
+            String[] messages = new String[size];
+            for( int i = 0; i < size; i++ ) {
+                ChatEvent event = outbox.poll();
+                kinds[i] = event.kind;
+                clientIds[i] = event.clientId;
+                playerNames[i] = event.playerName;
+                messages[i] = event.message;
+            }
+            try {
+                getCallback().chatEvents(kinds, clientIds, playerNames, messages);
+                sentBatches++;
+                batchCount.incrementAndGet();
+            } catch( RuntimeException e ) {
+                log.warn("Error sending chat events to:" + name, e);
+            }
+        }
+ 
         @Override
         public void sendMessage( String message ) {
             postMessage(this, message);
@@ -211,12 +704,19 @@ public class ChatHostedService
 
         @Override
         public List<String> getPlayerNames() {
-            List<String> results = new ArrayList<>();
-            for( ChatSessionImpl chatter : players ) {
-                results.add(chatter.name);
-            }
-            return results;
+            // Only rebuilt when the roster changes
+            return rosterNames;
         }        
+ 
+        @Override
+        public void requestRoster() {
+            events.add(new ChatEvent(this, EVENT_RESYNC, null));
+        }
+ 
+        @Override
+        public void chatEventsReceived( int batches ) {
+            ackedBatches.addAndGet(batches);
+        }
 
         @Override
         public void playerJoined( int clientId, String playerName ) {
@@ -232,6 +732,21 @@ public class ChatHostedService
         public void playerLeft( int clientId, String playerName ) {
             getCallback().playerLeft(clientId, playerName);
         }
+ 
+        @Override
+        public void chatEvents( int[] kinds, int[] clientIds, String[] playerNames, String[] messages ) {
+            getCallback().chatEvents(kinds, clientIds, playerNames, messages);
+        }
+ 
+        @Override
+        public void rosterSnapshot( int version, int[] clientIds, String[] playerNames ) {
+            getCallback().rosterSnapshot(version, clientIds, playerNames);
+        }
+ 
+        @Override
+        public void rosterChanged( int version, int[] kinds, int[] clientIds, String[] playerNames ) {
+            getCallback().rosterChanged(version, kinds, clientIds, playerNames);
+        }
     }    
 }
 
@@ -40,7 +40,6 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.network.HostedConnection;
 import com.jme3.network.serializing.Serializer;
-import com.jme3.network.serializing.serializers.FieldSerializer;
 import com.jme3.network.service.AbstractHostedConnectionService;
 import com.jme3.network.service.HostedServiceManager;
 import com.jme3.network.service.rmi.RmiHostedService;
@@ -52,6 +51,7 @@ import com.simsilica.ethereal.EtherealHost;
 import com.simsilica.event.EventBus;
 import com.simsilica.mathd.Vec3d;
 import com.simsilica.sim.GameSystemManager;
+import com.waffleware.example.common.remote.serializers.QuaternionSerializer;
 import com.waffleware.example.communication.listeners.GameSessionListener;
 import com.waffleware.example.communication.sessions.GameSession;
 import com.waffleware.example.entity.data.Position;
@@ -59,6 +59,7 @@ import com.waffleware.example.logic.ShipDriver;
 import com.waffleware.example.logic.SimplePhysics;
 import com.waffleware.example.logic.utils.GameEntities;
 import com.waffleware.example.server.events.AccountEvent;
+import com.waffleware.example.server.systems.ViewerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +83,7 @@ public class GameSessionHostedService extends AbstractHostedConnectionService
     private GameSystemManager gameSystems;
     private EntityData        ed;
     private SimplePhysics     physics;
+    private ViewerRegistry    viewers;
 
     private RmiHostedService rmiService;
     private AccountObserver accountObserver = new AccountObserver();
@@ -96,8 +98,9 @@ public class GameSessionHostedService extends AbstractHostedConnectionService
         // player is actually logged on.
         setAutoHost(false);
         
-        // Make sure that quaternions are registered with the serializer
-        Serializer.registerClass(Quaternion.class, new FieldSerializer());
+        // Make sure that quaternions are registered with the serializer.
+        // The smallest-three encoding is 6 bytes instead of 16.
+        Serializer.registerClass(Quaternion.class, new QuaternionSerializer());
     }
 
     
@@ -130,6 +133,9 @@ public class GameSessionHostedService extends AbstractHostedConnectionService
             throw new RuntimeException("GameSessionHostedService requires a SimplePhysics system.");
         }
         //physics.addPhysicsListener(new NaivePhysicsSender());        
+        
+        // Optional... without it everything is just sent at full rate
+        viewers = gameSystems.get(ViewerRegistry.class);
     }
  
     @Override
@@ -155,6 +161,9 @@ public class GameSessionHostedService extends AbstractHostedConnectionService
         // Setup to start using SimEthereal synching
         getService(EtherealHost.class).startHostingOnConnection(conn);
         getService(EtherealHost.class).setConnectionObject(conn, session.shipEntity.getId(), new Vec3d());       
+        if( viewers != null ) {
+            viewers.addViewer(session.shipEntity, getService(EtherealHost.class).getStateListener(conn));
+        }
  
         // Start hosting on the chat server also
         String name = AccountHostedService.getPlayerName(conn);
@@ -172,6 +181,9 @@ public class GameSessionHostedService extends AbstractHostedConnectionService
         GameSessionImpl session = getGameSession(conn);
         if( session != null ) {
             
+            if( viewers != null ) {
+                viewers.removeViewer(session.shipEntity);
+            }
             session.close();
 
             // Remove this connection from the chat service also.
@@ -264,13 +276,21 @@ System.out.println("Set position on:" + shipEntity);
         }
         
         @Override   
-        public void move(Quaternion rotation, Vector3f thrust ) {
+        public void move(int sequence, Quaternion rotation, Vector3f thrust ) {
             if( log.isTraceEnabled() ) {
-                log.trace("move(" + rotation + ", " + thrust + ")");
+                log.trace("move(" + sequence + ", " + rotation + ", " + thrust + ")");
             }
             
             // Need to forward this to the game world
-            shipDriver.applyMovementState(rotation, thrust);
+            shipDriver.applyMovementState(sequence, rotation, thrust);
+        }
+ 
+        /**
+         *  Returns the sequence number of the last movement input that
+         *  the physics thread applied to this player's ship.
+         */
+        public int getLastProcessedSequence() {
+            return shipDriver.getLastProcessedSequence();
         }
         
         protected GameSessionListener getCallback() {
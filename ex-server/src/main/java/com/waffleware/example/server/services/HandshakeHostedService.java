@@ -0,0 +1,179 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.services;
+
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Message;
+import com.jme3.network.MessageListener;
+import com.jme3.network.Server;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.service.AbstractHostedConnectionService;
+import com.jme3.network.service.AbstractHostedService;
+import com.jme3.network.service.HostedServiceManager;
+import com.waffleware.example.common.remote.handshake.ClientReadyMessage;
+import com.waffleware.example.common.remote.handshake.ConnectionReadyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Holds back the per-connection services that would otherwise start
+ *  talking to a new client before it has registered the server's 
+ *  serializers.  A client can read the SerializerRegistrationsMessage
+ *  and the RMI messages that follow it in the same buffer, and it fails
+ *  to read the RMI messages because the classes are not registered yet.
+ *  
+ *  <p>The gated services must not auto-host.  They are started for a
+ *  connection when its ClientReadyMessage arrives, and then a 
+ *  ConnectionReadyMessage is sent back.  No thread waits on any of
+ *  this, so a burst of new connections is set up in parallel.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class HandshakeHostedService extends AbstractHostedService {
+
+    static Logger log = LoggerFactory.getLogger(HandshakeHostedService.class);
+
+    private static final String ATTRIBUTE_READY = "handshake.ready";
+
+    private Class<? extends AbstractHostedConnectionService>[] gatedTypes;
+    private List<AbstractHostedConnectionService> gated = new ArrayList<>();
+    private ReadyListener readyListener = new ReadyListener();
+    private AtomicInteger pending = new AtomicInteger();
+ 
+    /**
+     *  Creates a handshake service that will start hosting the specified
+     *  services on each connection, in order, once the client is ready.
+     */
+    @SafeVarargs
+    public HandshakeHostedService( Class<? extends AbstractHostedConnectionService>... gatedTypes ) {
+        this.gatedTypes = gatedTypes;
+        
+        // The handshake messages must be registered before the server 
+        // sends its serializer registrations
+        Serializer.registerClasses(ClientReadyMessage.class, ConnectionReadyMessage.class);
+    }
+ 
+    /**
+     *  Returns the number of connections that have not yet completed
+     *  the handshake.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+    
+    public static boolean isReady( HostedConnection conn ) {
+        return Boolean.TRUE.equals(conn.getAttribute(ATTRIBUTE_READY));
+    }
+ 
+    @Override
+    protected void onInitialize( HostedServiceManager s ) {
+        getServer().addMessageListener(readyListener, ClientReadyMessage.class);
+    }
+    
+    @Override
+    public void start() {
+        for( Class<? extends AbstractHostedConnectionService> type : gatedTypes ) {
+            AbstractHostedConnectionService service = getService(type);
+            if( service == null ) {
+                throw new RuntimeException("HandshakeHostedService requires a " + type.getSimpleName());
+            }
+            if( service.getAutoHost() ) {
+                throw new RuntimeException(type.getSimpleName() + " must not auto-host behind a handshake");
+            }
+            gated.add(service);
+        }
+    }
+ 
+    @Override
+    public void terminate( HostedServiceManager s ) {
+        getServer().removeMessageListener(readyListener, ClientReadyMessage.class);
+    }
+ 
+    @Override
+    public void connectionAdded( Server server, HostedConnection conn ) {
+        log.debug("connectionAdded(" + conn + ")");
+        pending.incrementAndGet();
+    }
+ 
+    @Override
+    public void connectionRemoved( Server server, HostedConnection conn ) {
+        log.debug("connectionRemoved(" + conn + ")");
+        Boolean state;
+        synchronized( conn ) {
+            // Mark it closed so that a late ready message is ignored
+            state = conn.getAttribute(ATTRIBUTE_READY);
+            conn.setAttribute(ATTRIBUTE_READY, false);
+        }
+        if( state == null ) {
+            pending.decrementAndGet();
+        }
+        if( !Boolean.TRUE.equals(state) ) {
+            return;
+        }
+        // Stop in the reverse order that they were started
+        for( int i = gated.size() - 1; i >= 0; i-- ) {
+            gated.get(i).stopHostingOnConnection(conn);
+        }
+    }
+ 
+    protected void clientReady( HostedConnection conn ) {
+        synchronized( conn ) {
+            if( conn.getAttribute(ATTRIBUTE_READY) != null ) {
+                log.warn("Ignoring ClientReadyMessage from ready or closed connection:" + conn);
+                return;
+            }
+            conn.setAttribute(ATTRIBUTE_READY, true);
+        }
+        pending.decrementAndGet();
+        log.debug("clientReady(" + conn + ")");
+        for( AbstractHostedConnectionService service : gated ) {
+            service.startHostingOnConnection(conn);
+        }
+        conn.send(new ConnectionReadyMessage());
+    }
+ 
+    private class ReadyListener implements MessageListener<HostedConnection> {
+        @Override
+        public void messageReceived( HostedConnection source, Message m ) {
+            clientReady(source);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.systems;
+
+/**
+ *  An adaptive outgoing bandwidth budget for one connection's object 
+ *  state updates.  The budget creeps up by a fixed amount while the link 
+ *  looks healthy and backs off by a factor when the ack miss rate climbs 
+ *  or the ping rises too far above the best ping seen so far, which is a 
+ *  good sign that data is queuing up somewhere along the way.
+ *
+ *  The simulation thread spends the budget a frame at a time through
+ *  beginFrame() and spend() or charge().
+ *
+ *  @author    Paul Speed
+ */
+public class ConnectionBudget {
+
+    private double minBytesPerSecond = 8 * 1024;
+    private double maxBytesPerSecond = 256 * 1024;
+    private double increase = 4 * 1024;
+    private double backoff = 0.75;
+    private double maxAckMissPercent = 5;
+    private double pingTolerance = 100;
+    
+    private double bytesPerSecond = 64 * 1024;
+    private double minPing = Double.MAX_VALUE;
+    private double remaining;
+    
+    public ConnectionBudget() {
+    }
+ 
+    public void setBytesPerSecond( double bytesPerSecond ) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+    
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+    
+    public void setMinBytesPerSecond( double minBytesPerSecond ) {
+        this.minBytesPerSecond = minBytesPerSecond;
+    }
+    
+    public double getMinBytesPerSecond() {
+        return minBytesPerSecond;
+    }
+    
+    public void setMaxBytesPerSecond( double maxBytesPerSecond ) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+    
+    public double getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+ 
+    /**
+     *  Sets how many bytes per second are added to the budget for each
+     *  healthy adjustment.  Defaults to 4k.
+     */   
+    public void setIncrease( double increase ) {
+        this.increase = increase;
+    }
+    
+    public double getIncrease() {
+        return increase;
+    }
+ 
+    /**
+     *  Sets the factor that the budget is multiplied by when the link
+     *  looks congested.  Defaults to 0.75.
+     */   
+    public void setBackoff( double backoff ) {
+        this.backoff = backoff;
+    }
+    
+    public double getBackoff() {
+        return backoff;
+    }
+ 
+    /**
+     *  Sets the ack miss percentage above which the link is considered
+     *  congested.  Defaults to 5.
+     */   
+    public void setMaxAckMissPercent( double maxAckMissPercent ) {
+        this.maxAckMissPercent = maxAckMissPercent;
+    }
+    
+    public double getMaxAckMissPercent() {
+        return maxAckMissPercent;
+    }
+ 
+    /**
+     *  Sets how many milliseconds the ping can rise above the best ping
+     *  seen before the link is considered congested.  Defaults to 100.
+     */   
+    public void setPingTolerance( double pingTolerance ) {
+        this.pingTolerance = pingTolerance;
+    }
+    
+    public double getPingTolerance() {
+        return pingTolerance;
+    }
+ 
+    /**
+     *  Adjusts the budget based on the latest connection statistics.
+     *  Returns true if the link was considered congested.
+     */   
+    public boolean adjust( double ackMissPercent, double pingMillis ) {
+        if( pingMillis > 0 ) {
+            minPing = Math.min(minPing, pingMillis);
+        }
+        boolean congested = ackMissPercent > maxAckMissPercent
+                            || (pingMillis > 0 && pingMillis > minPing + pingTolerance);
+        if( congested ) {
+            bytesPerSecond = Math.max(minBytesPerSecond, bytesPerSecond * backoff);
+        } else {
+            bytesPerSecond = Math.min(maxBytesPerSecond, bytesPerSecond + increase);
+        }
+        return congested;
+    }
+ 
+    /**
+     *  Refills the budget for a frame of the specified length in seconds.
+     *  Unspent budget does not carry over so that a quiet stretch can't
+     *  turn into a burst but anything overdrawn by charge() is paid back
+     *  first.
+     */   
+    public void beginFrame( double tpf ) {
+        remaining = Math.min(remaining, 0) + bytesPerSecond * tpf;
+    }
+ 
+    public double getRemaining() {
+        return remaining;
+    }
+ 
+    /**
+     *  Spends the specified number of bytes if there is enough left this
+     *  frame and returns true, else returns false.
+     */   
+    public boolean spend( int bytes ) {
+        if( remaining < bytes ) {
+            return false;
+        }
+        remaining -= bytes;
+        return true;
+    }
+ 
+    /**
+     *  Spends the specified number of bytes whether there is enough left 
+     *  or not.  This is for data that will be sent to the connection 
+     *  anyway, the overdraft comes out of the following frames.
+     */   
+    public void charge( int bytes ) {
+        remaining -= bytes;
+    }
+ 
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[bytesPerSecond=" + (int)bytesPerSecond 
+                + ", minPing=" + (minPing == Double.MAX_VALUE ? "?" : String.valueOf(minPing)) + "]";
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2016, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.waffleware.example.server.systems;
+
+import com.simsilica.es.EntityId;
+import com.simsilica.ethereal.NetworkStateListener;
+
+import java.util.Arrays;
+
+/**
+ *  Keeps track of the entities that players are currently viewing the
+ *  world from, ie: their ships, along with each player's connection
+ *  stats and bandwidth budget.  Game sessions add and remove their 
+ *  viewers from the networking threads and the game systems read the 
+ *  current set from the simulation thread.
+ *
+ *  @author    Paul Speed
+ */
+public class ViewerRegistry {
+
+    private static final Viewer[] EMPTY = new Viewer[0];
+
+    private volatile Viewer[] viewers = EMPTY;
+    
+    public ViewerRegistry() {
+    }
+ 
+    public Viewer addViewer( EntityId entity ) {
+        return addViewer(entity, null);
+    }
+ 
+    /**
+     *  Adds a viewer for the specified entity.  The state listener is the
+     *  connection's SimEthereal state listener and is where the viewer's
+     *  bandwidth budget gets its ack and ping stats.  It can be null, in
+     *  which case the budget is never adjusted.
+     */   
+    public synchronized Viewer addViewer( EntityId entity, NetworkStateListener stateListener ) {
+        int i = indexOf(entity);
+        if( i >= 0 ) {
+            return viewers[i];
+        }
+        Viewer viewer = new Viewer(entity, stateListener);
+        Viewer[] array = Arrays.copyOf(viewers, viewers.length + 1);
+        array[viewers.length] = viewer;
+        viewers = array;
+        return viewer;
+    }
+    
+    public synchronized void removeViewer( EntityId entity ) {
+        int i = indexOf(entity);
+        if( i < 0 ) {
+            return;
+        }
+        Viewer[] array = new Viewer[viewers.length - 1];
+        System.arraycopy(viewers, 0, array, 0, i);
+        System.arraycopy(viewers, i + 1, array, i, array.length - i);
+        viewers = array;
+    }
+ 
+    /**
+     *  Returns the current viewers.  The returned array is a snapshot that
+     *  must not be modified.
+     */   
+    public Viewer[] getViewers() {
+        return viewers;
+    }
+    
+    private int indexOf( EntityId entity ) {
+        Viewer[] array = viewers;
+        for( int i = 0; i < array.length; i++ ) {
+            if( array[i].entity.equals(entity) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+ 
+    public static class Viewer {
+        private final EntityId entity;
+        private final NetworkStateListener stateListener;
+        private final ConnectionBudget budget = new ConnectionBudget();
+        
+        public Viewer( EntityId entity, NetworkStateListener stateListener ) {
+            this.entity = entity;
+            this.stateListener = stateListener;
+        }
+        
+        public EntityId getEntity() {
+            return entity;
+        }
+ 
+        /**
+         *  Returns the connection's state listener or null if there isn't
+         *  one.
+         */       
+        public NetworkStateListener getStateListener() {
+            return stateListener;
+        }
+ 
+        /**
+         *  Returns the bandwidth budget for this viewer's object updates.
+         *  This should only be used from the simulation thread.
+         */       
+        public ConnectionBudget getBudget() {
+            return budget;
+        }
+        
+        @Override
+        public String toString() {
+            return "Viewer[" + entity + ", " + budget + "]";
+        }
+    }
+}
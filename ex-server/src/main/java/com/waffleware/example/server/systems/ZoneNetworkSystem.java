@@ -36,38 +36,278 @@
 
 package com.waffleware.example.server.systems;
 
+import com.simsilica.ethereal.NetworkStateListener;
 import com.simsilica.ethereal.zone.ZoneManager;
+import com.simsilica.mathd.Quatd;
+import com.simsilica.mathd.Vec3d;
+import com.simsilica.mathd.Vec3i;
 import com.simsilica.sim.AbstractGameSystem;
 import com.simsilica.sim.SimTime;
+import com.waffleware.example.common.remote.GameConstants;
 import com.waffleware.example.logic.Body;
+import com.waffleware.example.logic.BodyStore;
 import com.waffleware.example.logic.PhysicsListener;
 import com.waffleware.example.logic.SimplePhysics;
+import com.waffleware.example.logic.utils.EntityIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  *  A game system that registers a listener with the SimplePhysics
  *  system and then forwards those events to the SimEtheral zone manager,
  *  which in turn will package them up for the clients in an efficient way.
  *
+ *  Bodies are only forwarded when their position or rotation changes by 
+ *  at least the resolution that the network protocol can represent.  The
+ *  last quantized state sent for each body is remembered for this.  To 
+ *  make sure that nothing stays stale forever, a rotating slice of all
+ *  bodies is also sent every frame such that every body is refreshed at
+ *  least once per keyframe interval.
+ *
+ *  Bodies far from every player are also sent less often.  Each body gets
+ *  an interest tier from the number of axes along which its zone is offset 
+ *  from the closest viewer's zone: 0 for the viewer's own zone, 1 for the
+ *  face-adjacent zones, 2 for the edges, and 3 for the corners.  The tier
+ *  sets how many frames apart the body's updates are sent.  The defaults 
+ *  are every frame for the own zone, every 2nd frame for the faces and 
+ *  edges, and every 4th for the corners and for anything outside every
+ *  viewer's zone radius.  The zones are shared by all of the connections so 
+ *  a body uses the best tier of any viewer.  Updates that were held back 
+ *  are sent on the body's next turn even if it stopped moving in between.  
+ *  Viewers come from the ViewerRegistry.  If no registry is registered
+ *  then everything is sent at the full rate.
+ *
+ *  Finally, each viewer has a ConnectionBudget of bytes per second for
+ *  object updates that adapts to the connection's ack miss rate and ping.
+ *  The updates that are ready each frame are ranked by how close the body
+ *  is to its nearest viewer, how long since it was last sent, and how fast
+ *  it is moving relative to that viewer, and bodies that no viewer can 
+ *  see go last.  They are sent in that order and each update is charged 
+ *  to every viewer within range of the body since the shared zones deliver
+ *  it to all of them.  An update is held back for the body's next turn, 
+ *  keyframes included, only when none of those viewers has budget left 
+ *  for the frame.  A viewer that could not afford an update it received 
+ *  anyway pays it back out of its following frames, which holds back the 
+ *  bodies that only it can see instead of everyone else's.
+ *
  *  @author    Paul Speed
  */
 public class ZoneNetworkSystem
   extends AbstractGameSystem {
     
     private ZoneManager zones;
+    private SimplePhysics physics;
     private PhysicsObserver physicsObserver = new PhysicsObserver();
+ 
+    private double positionResolution = GameConstants.POSITION_RESOLUTION;
+    private double rotationResolution = GameConstants.ROTATION_RESOLUTION;
+    private int keyframeInterval = 60;
+    
+    private int zoneSize = GameConstants.ZONE_SIZE;
+    private Vec3i zoneRadius = GameConstants.ZONE_RADIUS;
+    private int[] tierIntervals = new int[] { 1, 2, 2, 4 };
+    private int outOfViewInterval = 4;
+    private ViewerRegistry viewers;
+ 
+    // Roughly what one object update costs in an ObjectStateMessage: 
+    // 48 bits of position, 48 of rotation, plus zone and network IDs.
+    private int updateSize = 16;
+    private int adjustInterval = 60;
+    private double speedScale = 10;
+    
+    // Only the sim thread writes these but the metrics endpoints read
+    // them from their own threads.
+    private volatile long sentCount;
+    private volatile long skippedCount;
+    private volatile long deferredCount;
+    private volatile long throttledCount;
+    private volatile int occupiedZoneCount;
     
     public ZoneNetworkSystem(ZoneManager zones ) {
         this.zones = zones;
     }
+ 
+    /**
+     *  Sets the position change below which body updates are not sent to
+     *  the zone manager.  Defaults to GameConstants.POSITION_RESOLUTION.
+     */   
+    public void setPositionResolution( double positionResolution ) {
+        this.positionResolution = positionResolution;
+    }
+    
+    public double getPositionResolution() {
+        return positionResolution;
+    }
+ 
+    /**
+     *  Sets the quaternion component change below which body updates are
+     *  not sent to the zone manager.  Defaults to GameConstants.ROTATION_RESOLUTION.
+     */   
+    public void setRotationResolution( double rotationResolution ) {
+        this.rotationResolution = rotationResolution;
+    }
+    
+    public double getRotationResolution() {
+        return rotationResolution;
+    }
+ 
+    /**
+     *  Sets the number of frames over which every body will be sent to the
+     *  zone manager at least once whether it changed or not.  0 disables
+     *  keyframes, in which case every body is forwarded every frame so that
+     *  viewers arriving later still see bodies at rest.  Defaults to 60.  
+     *  This must be set before the system is initialized.
+     */   
+    public void setKeyframeInterval( int keyframeInterval ) {
+        this.keyframeInterval = keyframeInterval;
+    }
+    
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+ 
+    /**
+     *  Sets how many frames apart updates are sent for bodies whose zone is
+     *  offset from the nearest viewer's zone along the specified number of
+     *  axes (0 to 3).
+     */   
+    public void setTierInterval( int offsetAxes, int interval ) {
+        tierIntervals[offsetAxes] = Math.max(1, interval);
+    }
+    
+    public int getTierInterval( int offsetAxes ) {
+        return tierIntervals[offsetAxes];
+    }
+ 
+    /**
+     *  Sets how many frames apart updates are sent for bodies that are not
+     *  within any viewer's zone radius.
+     */   
+    public void setOutOfViewInterval( int outOfViewInterval ) {
+        this.outOfViewInterval = Math.max(1, outOfViewInterval);
+    }
+    
+    public int getOutOfViewInterval() {
+        return outOfViewInterval;
+    }
+ 
+    /**
+     *  Sets the estimated number of bytes that one object update costs
+     *  against a viewer's budget.  Defaults to 16.
+     */   
+    public void setUpdateSize( int updateSize ) {
+        this.updateSize = updateSize;
+    }
+    
+    public int getUpdateSize() {
+        return updateSize;
+    }
+ 
+    /**
+     *  Sets how many frames apart the viewer budgets are adjusted from
+     *  their connection stats.  Defaults to 60.
+     */   
+    public void setAdjustInterval( int adjustInterval ) {
+        this.adjustInterval = Math.max(1, adjustInterval);
+    }
+    
+    public int getAdjustInterval() {
+        return adjustInterval;
+    }
+ 
+    /**
+     *  Sets the relative speed at which a body's priority is doubled.
+     *  Defaults to 10 units per second.
+     */   
+    public void setSpeedScale( double speedScale ) {
+        this.speedScale = speedScale;
+    }
+    
+    public double getSpeedScale() {
+        return speedScale;
+    }
+ 
+    /**
+     *  Returns the total number of body updates that were sent to the zone
+     *  manager.
+     */   
+    public long getSentCount() {
+        return sentCount;
+    }
+ 
+    /**
+     *  Returns the total number of body updates that were filtered out
+     *  because they were below the network resolution.
+     */   
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+ 
+    /**
+     *  Returns the total number of times a changed body was held back
+     *  because it wasn't its tier's turn.
+     */   
+    public long getDeferredCount() {
+        return deferredCount;
+    }
+ 
+    /**
+     *  Returns the total number of times a ready update was held back
+     *  because none of its viewers had budget left for the frame.
+     */   
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+ 
+    /**
+     *  Returns the number of zones that contained at least one body center
+     *  the last time they were counted, which is once per adjust interval.
+     *  This is safe to call from any thread.
+     */   
+    public int getOccupiedZoneCount() {
+        return occupiedZoneCount;
+    }
      
     @Override
     protected void initialize() {
-        getSystem(SimplePhysics.class).addPhysicsListener(physicsObserver);
+        this.physics = getSystem(SimplePhysics.class);
+        this.viewers = getSystem(ViewerRegistry.class);
+        
+        // The zone manager only delivers updates to the viewers that are in
+        // a body's zones at the time, so bodies at rest must be re-sent for 
+        // anyone who connects or arrives later.  The keyframe slice does that
+        // so we only need the bodies that moved.  Without keyframes we need
+        // all of them every frame.
+        physics.addPhysicsListener(physicsObserver, keyframeInterval > 0);
     }
 
     @Override
     protected void terminate() {
-        getSystem(SimplePhysics.class).removePhysicsListener(physicsObserver);
+        physics.removePhysicsListener(physicsObserver);
+    }
+ 
+    /**
+     *  The quantized state last sent to the zone manager for a body along
+     *  with its scheduling state.
+     */
+    private static class SentState {
+        long px, py, pz;
+        long rx, ry, rz, rw;
+        long frame = -1;
+        Body body;
+        boolean pending;
+        boolean queued;
+        boolean keyframe;
+        
+        // The nearest viewer and tier as of the 'located' frame plus the 
+        // range of PhysicsObserver.receivers that can see the body
+        long located = -1;
+        int viewer;
+        int tier;
+        int receiverStart;
+        int receiverCount;
     }
     
     /**
@@ -76,29 +316,449 @@ public class ZoneNetworkSystem
      */
     private class PhysicsObserver implements PhysicsListener
     {
+        // The zone manager copies what it needs so we can reuse this
+        private Vec3d pos = new Vec3d();
+        private long[] quantized = new long[7];
+        
+        private EntityIndex<SentState> sent = new EntityIndex<>();
+        private long frame;
+        private int keyframeCursor;
+        
+        // Bodies whose changes were held back until their next turn
+        private List<SentState> pending = new ArrayList<>();
+        
+        // Bodies that are ready to send this frame and the sort keys
+        // used to rank them
+        private List<SentState> queue = new ArrayList<>();
+        private long[] ranks = new long[64];
+        private long[] zoneKeys = new long[64];
+        
+        // The viewers for the current frame and their positions and 
+        // velocities, 3 doubles per viewer
+        private ViewerRegistry.Viewer[] frameViewers = new ViewerRegistry.Viewer[4];
+        private double[] viewerPos = new double[3 * 4];
+        private double[] viewerVel = new double[3 * 4];
+        private int viewerCount;
+        
+        // The viewer indexes that can see each located body this frame
+        private int[] receivers = new int[64];
+        private int receiverSize;
  
         @Override   
         public void beginFrame( SimTime time ) {
+            frame++;
+            if( frame % adjustInterval == 0 ) {
+                countZones();
+            }
+            updateViewers(time.getTpf());
             zones.beginUpdate(time.getTime());
         }
  
+        private void updateViewers( double tpf ) {
+            viewerCount = 0;
+            receiverSize = 0;
+            if( viewers == null ) {
+                return;
+            }
+            ViewerRegistry.Viewer[] array = viewers.getViewers();
+            if( frameViewers.length < array.length ) {
+                frameViewers = Arrays.copyOf(frameViewers, array.length);
+                viewerPos = Arrays.copyOf(viewerPos, array.length * 3);
+                viewerVel = Arrays.copyOf(viewerVel, array.length * 3);
+            }
+            boolean adjust = frame % adjustInterval == 0;
+            double[] vel = physics.getBodyStore().getVelocityArray();
+            for( ViewerRegistry.Viewer viewer : array ) {
+                Body body = physics.getBody(viewer.getEntity());
+                if( body == null ) {
+                    continue;
+                }
+                ConnectionBudget budget = viewer.getBudget();
+                NetworkStateListener listener = viewer.getStateListener();
+                if( adjust && listener != null ) {
+                    budget.adjust(listener.getConnectionStats().getAckMissPercent(), 
+                                  listener.getConnectionStats().getAveragePingTime() / 1000000.0);
+                }
+                budget.beginFrame(tpf);
+                
+                body.getPosition(pos);
+                int n = viewerCount++;
+                int i = n * 3;
+                int v = body.getSlot() * 3;
+                frameViewers[n] = viewer;
+                viewerPos[i] = pos.x;
+                viewerPos[i + 1] = pos.y;
+                viewerPos[i + 2] = pos.z;
+                viewerVel[i] = vel[v];
+                viewerVel[i + 1] = vel[v + 1];
+                viewerVel[i + 2] = vel[v + 2];
+            }
+        }
+ 
+        private void countZones() {
+            BodyStore store = physics.getBodyStore();
+            double[] array = store.getPositionArray();
+            int size = store.size();
+            if( zoneKeys.length < size ) {
+                zoneKeys = new long[Math.max(size, zoneKeys.length * 2)];
+            }
+            for( int i = 0; i < size; i++ ) {
+                int p = i * 3;
+                // 21 bits per axis is plenty for zone coordinates
+                zoneKeys[i] = ((long)(toZone(array[p]) & 0x1fffff) << 42)
+                            | ((long)(toZone(array[p + 1]) & 0x1fffff) << 21)
+                            | (toZone(array[p + 2]) & 0x1fffff);
+            }
+            Arrays.sort(zoneKeys, 0, size);
+            int count = 0;
+            for( int i = 0; i < size; i++ ) {
+                if( i == 0 || zoneKeys[i] != zoneKeys[i - 1] ) {
+                    count++;
+                }
+            }
+            occupiedZoneCount = count;
+        }
+ 
+        private int toZone( double d ) {
+            return (int)Math.floor(d / zoneSize);
+        }
+ 
+        /**
+         *  Finds the closest viewer that can see the body, the best tier
+         *  of any viewer, or -1 for both if nobody can, and every viewer that
+         *  can.  The result is kept in the state and only worked out once per 
+         *  frame since the bodies don't move again until the next one.
+         */
+        private void locate( SentState state ) {
+            if( state.located == frame ) {
+                return;
+            }
+            state.body.getPosition(pos);
+            int x = toZone(pos.x);
+            int y = toZone(pos.y);
+            int z = toZone(pos.z);
+            int best = -1;
+            int bestTier = -1;
+            double bestDist = Double.MAX_VALUE;
+            int start = receiverSize;
+            for( int n = 0; n < viewerCount; n++ ) {
+                int i = n * 3;
+                int dx = Math.abs(x - toZone(viewerPos[i]));
+                int dy = Math.abs(y - toZone(viewerPos[i + 1]));
+                int dz = Math.abs(z - toZone(viewerPos[i + 2]));
+                if( dx > zoneRadius.x || dy > zoneRadius.y || dz > zoneRadius.z ) {
+                    continue;
+                }
+                if( receiverSize == receivers.length ) {
+                    receivers = Arrays.copyOf(receivers, receiverSize * 2);
+                }
+                receivers[receiverSize++] = n;
+                int axes = (dx > 0 ? 1 : 0) + (dy > 0 ? 1 : 0) + (dz > 0 ? 1 : 0);
+                if( bestTier < 0 || axes < bestTier ) {
+                    bestTier = axes;
+                }
+                double ddx = pos.x - viewerPos[i];
+                double ddy = pos.y - viewerPos[i + 1];
+                double ddz = pos.z - viewerPos[i + 2];
+                double dist = ddx * ddx + ddy * ddy + ddz * ddz;
+                if( dist < bestDist ) {
+                    bestDist = dist;
+                    best = n;
+                }
+            }
+            state.located = frame;
+            state.viewer = best;
+            state.tier = bestTier;
+            state.receiverStart = start;
+            state.receiverCount = receiverSize - start;
+        }
+ 
+        private boolean isTurn( SentState state ) {
+            if( viewers == null ) {
+                // No way to know who is looking so send everything
+                return true;
+            }
+            locate(state);
+            int interval = state.tier < 0 ? outOfViewInterval : tierIntervals[state.tier];
+            if( interval <= 1 ) {
+                return true;
+            }
+            // Stagger the bodies across the frames by ID
+            return Math.floorMod(frame + state.body.getBodyId().getId(), interval) == 0;
+        }
+ 
         @Override   
         public void addBody( Body body ) {
             // Don't really care about this
         }
+ 
+        private SentState getState( Body body ) {
+            SentState result = sent.get(body.getBodyId());
+            if( result == null ) {
+                result = new SentState();
+                result.body = body;
+                sent.put(body.getBodyId(), result);
+            }
+            return result;
+        }
+ 
+        private void quantize( Body body ) {
+            body.getPosition(pos);
+            Quatd rot = body.orientation;
+            quantized[0] = Math.round(pos.x / positionResolution);
+            quantized[1] = Math.round(pos.y / positionResolution);
+            quantized[2] = Math.round(pos.z / positionResolution);
+            quantized[3] = Math.round(rot.x / rotationResolution);
+            quantized[4] = Math.round(rot.y / rotationResolution);
+            quantized[5] = Math.round(rot.z / rotationResolution);
+            quantized[6] = Math.round(rot.w / rotationResolution);
+        }
+ 
+        private void send( SentState state ) {
+            Body body = state.body;
+            quantize(body);
+            state.px = quantized[0];
+            state.py = quantized[1];
+            state.pz = quantized[2];
+            state.rx = quantized[3];
+            state.ry = quantized[4];
+            state.rz = quantized[5];
+            state.rw = quantized[6];
+            zones.updateEntity(body.getBodyId().getId(), true, pos, body.orientation, body.getBounds());
+            state.frame = frame;
+            state.pending = false;
+            state.keyframe = false;
+            sentCount++;
+        }
+ 
+        private void defer( SentState state ) {
+            if( !state.pending ) {
+                state.pending = true;
+                pending.add(state);
+            }
+        }
+ 
+        private void enqueue( SentState state, boolean keyframe ) {
+            state.queued = true;
+            state.keyframe = keyframe;
+            queue.add(state);
+        }
+ 
+        /**
+         *  Queues the body if its quantized state differs from what was last 
+         *  sent and it's the body's turn.
+         */
+        private void filter( Body body ) {
+            SentState state = getState(body);
+            if( state.frame == frame || state.queued ) {
+                return;
+            }
+            if( !isTurn(state) ) {
+                defer(state);
+                deferredCount++;
+                return;
+            }
+            
+            // Without keyframes an unchanged body is never refreshed, so it
+            // can't be skipped
+            quantize(body);
+            if( state.frame >= 0 && keyframeInterval > 0
+                && quantized[0] == state.px && quantized[1] == state.py && quantized[2] == state.pz
+                && quantized[3] == state.rx && quantized[4] == state.ry 
+                && quantized[5] == state.rz && quantized[6] == state.rw ) {
+                skippedCount++;
+                return;
+            }
+            enqueue(state, false);
+        }
+ 
+        /**
+         *  Queues any held back bodies whose turn it is now.
+         */
+        private void queuePending() {
+            int keep = 0;
+            for( int i = 0; i < pending.size(); i++ ) {
+                SentState state = pending.get(i);
+                if( state.body == null || !state.pending ) {
+                    // Removed while it was waiting or already sent by
+                    // a keyframe
+                    continue;
+                }
+                if( !isTurn(state) ) {
+                    pending.set(keep++, state);
+                    continue;
+                }
+                state.pending = false;
+                
+                // A held back keyframe still needs to go out even if the
+                // body hasn't changed
+                boolean keyframe = state.keyframe;
+                filter(state.body);
+                if( keyframe && !state.queued && state.frame != frame ) {
+                    enqueue(state, true);
+                }
+            }
+            pending.subList(keep, pending.size()).clear();
+        }
+ 
+        /**
+         *  Queues the next slice of all bodies regardless of whether they
+         *  changed so that each one is refreshed once per keyframe interval.
+         */
+        private void queueKeyframes() {
+            if( keyframeInterval <= 0 ) {
+                return;
+            }
+            BodyStore store = physics.getBodyStore();
+            Body[] array = store.getArray();
+            int size = store.size();
+            if( size == 0 ) {
+                return;
+            }
+            int slice = (size + keyframeInterval - 1) / keyframeInterval;
+            for( int i = 0; i < slice; i++ ) {
+                if( keyframeCursor >= size ) {
+                    keyframeCursor = 0;
+                }
+                SentState state = getState(array[keyframeCursor++]);
+                if( state.frame != frame && !state.queued ) {
+                    enqueue(state, true);
+                }
+            }
+        }
+ 
+        /**
+         *  Returns the send priority of the body, which must already be
+         *  loaded into 'pos', relative to the viewer.
+         */
+        private float getPriority( SentState state, int viewer ) {
+            int i = viewer * 3;
+            double dx = pos.x - viewerPos[i];
+            double dy = pos.y - viewerPos[i + 1];
+            double dz = pos.z - viewerPos[i + 2];
+            double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            
+            double[] vel = physics.getBodyStore().getVelocityArray();
+            int v = state.body.getSlot() * 3;
+            double vx = vel[v] - viewerVel[i];
+            double vy = vel[v + 1] - viewerVel[i + 1];
+            double vz = vel[v + 2] - viewerVel[i + 2];
+            double speed = Math.sqrt(vx * vx + vy * vy + vz * vz);
+            
+            long staleness = state.frame < 0 ? keyframeInterval : Math.min(frame - state.frame, keyframeInterval);
+            double priority = (1 + staleness) * (1 + speed / speedScale) / (1 + dist / zoneSize);
+            if( state.keyframe ) {
+                // Refreshes of things that didn't change can always wait
+                priority *= 0.25;
+            }
+            return (float)priority;
+        }
+ 
+        /**
+         *  Charges the update to every viewer that will receive it and returns
+         *  true if at least one of them had room for it, else charges nothing
+         *  and returns false.
+         */
+        private boolean afford( SentState state ) {
+            int end = state.receiverStart + state.receiverCount;
+            boolean room = false;
+            for( int i = state.receiverStart; i < end; i++ ) {
+                if( frameViewers[receivers[i]].getBudget().getRemaining() >= updateSize ) {
+                    room = true;
+                    break;
+                }
+            }
+            if( !room && state.receiverCount > 0 ) {
+                return false;
+            }
+            for( int i = state.receiverStart; i < end; i++ ) {
+                frameViewers[receivers[i]].getBudget().charge(updateSize);
+            }
+            return true;
+        }
+ 
+        /**
+         *  Sends the queued updates from highest priority to lowest until
+         *  the viewer budgets run out.
+         */
+        private void dispatch() {
+            int size = queue.size();
+            if( size == 0 ) {
+                return;
+            }
+            if( viewerCount == 0 ) {
+                // Nobody to spend bandwidth on
+                for( int i = 0; i < size; i++ ) {
+                    SentState state = queue.get(i);
+                    state.queued = false;
+                    send(state);
+                }
+                queue.clear();
+                return;
+            }
+            
+            if( ranks.length < size ) {
+                ranks = new long[Math.max(size, ranks.length * 2)];
+            }
+            for( int i = 0; i < size; i++ ) {
+                SentState state = queue.get(i);
+                locate(state);
+                state.body.getPosition(pos);
+                // Nobody receives updates for bodies out of everyone's view
+                // so they go last and cost nothing
+                float priority = state.viewer < 0 ? 0 : getPriority(state, state.viewer);
+                
+                // Positive floats sort the same as their bits
+                ranks[i] = ((long)Float.floatToIntBits(priority) << 32) | i;
+            }
+            Arrays.sort(ranks, 0, size);
+            
+            for( int n = size - 1; n >= 0; n-- ) {
+                SentState state = queue.get((int)ranks[n]);
+                state.queued = false;
+                if( afford(state) ) {
+                    send(state);
+                } else {
+                    // Try again on its next turn
+                    defer(state);
+                    throttledCount++;
+                }
+            }
+            queue.clear();
+        }
         
         @Override   
         public void updateBody( Body body ) {
-            zones.updateEntity(body.bodyId.getId(), true, body.pos, body.orientation, body.bounds);   
+            filter(body);
+        }
+        
+        @Override   
+        public void updateBodies( Body[] bodies, int count ) {
+            for( int i = 0; i < count; i++ ) {
+                filter(bodies[i]);
+            }
         }
  
         @Override   
         public void removeBody( Body body ) {
-            zones.remove(body.bodyId.getId());
+            SentState state = sent.remove(body.getBodyId());
+            if( state != null ) {
+                // Bodies get reused so make sure a pending or queued state 
+                // lets go
+                state.body = null;
+                if( state.queued ) {
+                    queue.remove(state);
+                    state.queued = false;
+                }
+            }
+            zones.remove(body.getBodyId().getId());
         }
     
         @Override   
         public void endFrame( SimTime time ) {
+            queuePending();
+            queueKeyframes();
+            dispatch();
             zones.endUpdate();
         } 
         